@@ -2,6 +2,7 @@ package zju.cst.aces.api;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -64,4 +65,13 @@ public interface Project {
      * @return 构建路径
      */
     Path getBuildPath();
+
+    /**
+     * 获取项目在同一次构建中直接依赖的其他模块。
+     *
+     * @return 上游模块列表，单模块项目返回空列表
+     */
+    default List<Project> getUpstreamProjects() {
+        return Collections.emptyList();
+    }
 }
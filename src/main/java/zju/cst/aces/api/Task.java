@@ -3,21 +3,23 @@ package zju.cst.aces.api;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
+import zju.cst.aces.graph.DependencyScheduler;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.runner.ClassRunner;
+import zju.cst.aces.runner.JobJournal;
 import zju.cst.aces.runner.MethodRunner;
+import zju.cst.aces.runner.Scheduler;
+import zju.cst.aces.runner.ShardCoordinator;
+import zju.cst.aces.runner.ShardQueue;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.*;
 import zju.cst.aces.api.Logger;
 import zju.cst.aces.util.Counter;
+import zju.cst.aces.util.MetadataCache;
 
 public class Task {
 
@@ -125,15 +127,32 @@ public class Task {
             return;
         }
         ProjectParser parser = new ProjectParser(config);
+        if (ShardCoordinator.isWorker()) {
+            // the coordinator has parsed the project, a worker only reads the parse output
+            ShardQueue queue = ShardCoordinator.openWorkerQueue(config);
+            if (queue == null) {
+                log.info("\n==========================\n[ChatUniTest] Skip module not sharded: " + project.getArtifactId());
+                return;
+            }
+            shardJob(queue);
+            log.info("\n==========================\n[ChatUniTest] Worker " + ShardCoordinator.currentWorker() + " finished");
+            return;
+        }
         parser.parse();
-        List<String> classPaths = ProjectParser.scanSourceDirectory(project);
-        if (config.isEnableMultithreading() == true) {
+        List<String> classPaths = DependencyScheduler.orderClassPaths(config, ProjectParser.scanSourceDirectory(project));
+        if (config.getWorkers() > 0) {
+            new ShardCoordinator(config).run(classPaths);
+        } else if (config.isEnableMultithreading() == true) {
             projectJob(classPaths);
         } else {
             for (String classPath : classPaths) {
                 String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
                 try {
                     String fullClassName = getFullClassName(config, className);
+                    if (JobJournal.of(config).isClassFinished(fullClassName)) {
+                        log.info("Skip finished class: " + classPath);
+                        continue;
+                    }
                     log.info("\n==========================\n[ChatUniTest] Generating tests for class < " + className + " > ...");
                     ClassRunner runner = new ClassRunner(config, fullClassName);
                     if (!Counter.filter(runner.classInfo)) {
@@ -147,67 +166,76 @@ public class Task {
             }
         }
 
+        log.debug(MetadataCache.classInfos().toString());
+        log.debug(MetadataCache.methodInfos().toString());
         log.info("\n==========================\n[ChatUniTest] Generation finished");
     }
 
     public void projectJob(List<String> classPaths) {
-        ExecutorService executor = Executors.newFixedThreadPool(config.getClassThreads());
-        List<Future<String>> futures = new ArrayList<>();
+        List<Callable<String>> tasks = new ArrayList<>();
         for (String classPath : classPaths) {
             Callable<String> callable = new Callable<String>() {
                 @Override
                 public String call() throws Exception {
-                    String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
-                    try {
-                        String fullClassName = getFullClassName(config, className);
-                        log.info("\n==========================\n[ChatUniTest] Generating tests for class < " + className + " > ...");
-                        ClassRunner runner = new ClassRunner(config, fullClassName);
-                        if (!Counter.filter(runner.classInfo)) {
-                            return "Skip class: " + classPath;
-                        }
-                        runner.start();
-                    } catch (IOException e) {
-                        log.error("[ChatUniTest] Generate tests for class " + className + " failed: " + e);
-                    }
-                    return "Processed " + classPath;
+                    return runClass(classPath);
                 }
             };
-            Future<String> future = executor.submit(callable);
-            futures.add(future);
+            tasks.add(callable);
+        }
+
+        for (String result : Scheduler.of(config).invokeAll(tasks)) {
+            System.out.println(result);
         }
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                executor.shutdownNow();
+    /**
+     * Claim classes from the shard queue and generate their tests until the queue is empty, in a worker JVM.
+     */
+    public void shardJob(ShardQueue queue) {
+        String worker = ShardCoordinator.currentWorker();
+        ShardQueue.Claim claim;
+        while ((claim = queue.claim(worker, ShardCoordinator.homeShard())) != null) {
+            ShardCoordinator.progress();
+            queue.heartbeat(worker);
+            long start = System.currentTimeMillis();
+            String result = runClass(claim.getClassPath());
+            log.info(worker + " >>> " + result);
+            queue.complete(claim, result, System.currentTimeMillis() - start);
+            ShardCoordinator.progress();
+            queue.heartbeat(worker);
+        }
+    }
+
+    /**
+     * Generate the tests of one class.
+     *
+     * @return a line describing what was done with the class
+     */
+    public String runClass(String classPath) {
+        String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
+        try {
+            String fullClassName = getFullClassName(config, className);
+            if (JobJournal.of(config).isClassFinished(fullClassName)) {
+                return "Skip finished class: " + classPath;
             }
-        });
-
-        for (Future<String> future : futures) {
-            try {
-                String result = future.get();
-                System.out.println(result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+            log.info("\n==========================\n[ChatUniTest] Generating tests for class < " + className + " > ...");
+            ClassRunner runner = new ClassRunner(config, fullClassName);
+            if (!Counter.filter(runner.classInfo)) {
+                return "Skip class: " + classPath;
             }
+            runner.start();
+        } catch (IOException e) {
+            log.error("[ChatUniTest] Generate tests for class " + className + " failed: " + e);
+            return "Failed " + classPath;
         }
-
-        executor.shutdown();
+        return "Processed " + classPath;
     }
 
     public static String getFullClassName(Config config, String name) throws IOException {
         if (isFullName(name)) {
             return name;
         }
-        Path classMapPath = config.getClassNameMapPath();
-        Map<String, List<String>> classMap = config.getGSON().fromJson(Files.readString(classMapPath, StandardCharsets.UTF_8), Map.class);
-        if (classMap.containsKey(name)) {
-            if (classMap.get(name).size() > 1) {
-                throw new RuntimeException("[ChatUniTest] Multiple classes Named " + name + ": " + classMap.get(name)
-                        + " Please use full qualified name!");
-            }
-            return classMap.get(name).get(0);
-        }
-        return name;
+        return config.getClassNameIndex().getFullClassName(name);
     }
 
     public static boolean isFullName(String name) {
@@ -12,8 +12,11 @@ import zju.cst.aces.api.Validator;
 import zju.cst.aces.api.impl.LoggerImpl;
 import zju.cst.aces.api.Logger;
 import zju.cst.aces.api.impl.ValidatorImpl;
+import zju.cst.aces.parser.ClassNameIndex;
+import zju.cst.aces.util.MetadataCache;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.nio.file.Path;
@@ -126,12 +129,18 @@ public class Config {
 
     /**
      * 类线程数
+     *
+     * @deprecated 类和方法共用共享调度器，只有{@link #maxThreads}生效，此值不再使用
      */
+    @Deprecated
     public int classThreads;
 
     /**
      * 方法线程数
+     *
+     * @deprecated 类和方法共用共享调度器，只有{@link #maxThreads}生效，此值不再使用
      */
+    @Deprecated
     public int methodThreads;
 
     /**
@@ -169,6 +178,106 @@ public class Config {
      */
     public int dependencyDepth;
 
+    /**
+     * 启用依赖上下文相关性排序标志
+     */
+    public boolean enableRelevanceRanking;
+
+    /**
+     * 启用思维树搜索标志
+     */
+    public boolean enableTreeOfThought;
+
+    /**
+     * 思维树每轮保留的分支数
+     */
+    public int totBeamWidth;
+
+    /**
+     * 启用解析结果JSON导出标志，解析结果默认只写入单文件存储
+     */
+    public boolean enableJsonExport;
+
+    /**
+     * 元数据缓存中强引用保留的类信息数量，方法信息为其四倍
+     */
+    public int metadataCacheSize;
+
+    /**
+     * 项目解析线程数，大于1时并行解析源文件
+     */
+    public int parseThreads;
+
+    /**
+     * 启用增量解析标志，只重新解析内容变化的源文件
+     */
+    public boolean enableIncrementalParse;
+
+    /**
+     * 启用延迟符号解析标志，解析阶段只做语法分析，依赖信息在方法被调度生成时才解析
+     */
+    public boolean enableLazyResolution;
+
+    /**
+     * 启用字节码依赖提取标志，从编译后的class文件中读取方法调用依赖，代替源码符号解析
+     */
+    public boolean enableBytecodeDependencies;
+
+    /**
+     * 启用多模块反应堆索引标志，上游模块在一次构建中只解析一次，其类信息可被下游模块查询
+     */
+    public boolean enableReactorIndex;
+
+    /**
+     * 类和方法的生成顺序策略，按方法依赖图决定先生成被依赖者还是被依赖最多者，或按单位成本的预期收益排序
+     */
+    public SchedulePolicy schedulePolicy;
+
+    /**
+     * 启用虚拟线程执行模式标志（需JDK 21+），生成任务在虚拟线程上运行，编译和执行测试在CPU核数大小的线程池上运行
+     */
+    public boolean enableVirtualThreads;
+
+    /**
+     * 启用生成流水线标志，构建提示、调用大模型、编译、执行测试各阶段在各自的有界线程池中执行
+     */
+    public boolean enablePipeline;
+
+    /**
+     * 成功即停止时同时进行的尝试数，大于1时并发执行尝试，任一尝试成功后取消其余尝试
+     */
+    public int speculativeAttempts;
+
+    /**
+     * 启用任务日志标志，记录各类、方法、尝试的完成状态和已完成的轮次，进程中断后重新运行时跳过已完成的工作并从最后完成的轮次继续
+     */
+    public boolean enableJournal;
+
+    /**
+     * 分片执行的工作进程数，大于0时当前进程作为协调进程，把类分片交给这些本地工作进程执行
+     */
+    public int workers;
+
+    /**
+     * 已有测试的Jacoco XML覆盖率报告，优先级调度策略据此估算方法的预期收益，默认为target/site/jacoco/jacoco.xml
+     */
+    public Path coverageReport;
+
+    /**
+     * 一次运行的大模型token预算，用完后不再开始新的方法和轮次，0表示不限
+     */
+    public long tokenBudget;
+
+    /**
+     * 一次运行的生成时长预算（分钟），用完后不再开始新的方法和轮次，0表示不限
+     */
+    public long timeBudget;
+
+    /**
+     * 依赖jar类型索引的目录，相同classpath的任务和多次运行共享同一索引
+     */
+    public Path typeIndexDir;
+
     /**
      * 模型对象
      */
@@ -303,6 +412,26 @@ public class Config {
         public int minErrorTokens = 500;
         public int sleepTime = 0;
         public int dependencyDepth = 1;
+        public boolean enableRelevanceRanking = true;
+        public boolean enableTreeOfThought = false;
+        public int totBeamWidth = 2;
+        public boolean enableJsonExport = false;
+        public int metadataCacheSize = MetadataCache.DEFAULT_MAXIMUM_SIZE;
+        public int parseThreads = 1;
+        public boolean enableIncrementalParse = true;
+        public boolean enableLazyResolution = false;
+        public boolean enableBytecodeDependencies = false;
+        public boolean enableReactorIndex = false;
+        public SchedulePolicy schedulePolicy = SchedulePolicy.SOURCE_ORDER;
+        public boolean enableVirtualThreads = false;
+        public boolean enablePipeline = false;
+        public int speculativeAttempts = 1;
+        public boolean enableJournal = false;
+        public int workers = 0;
+        public Path coverageReport;
+        public long tokenBudget = 0;
+        public long timeBudget = 0;
+        public Path typeIndexDir = Paths.get(System.getProperty("java.io.tmpdir"), "chatunitest-info", "type-index");
         public Model model = Model.GPT_3_5_TURBO;
         public Double temperature = 0.5;
         public int topP = 1;
@@ -468,11 +597,19 @@ public class Config {
             return this;
         }
 
+        /**
+         * @deprecated 只有{@link #maxThreads(int)}生效
+         */
+        @Deprecated
         public ConfigBuilder classThreads(int classThreads) {
             this.classThreads = classThreads;
             return this;
         }
 
+        /**
+         * @deprecated 只有{@link #maxThreads(int)}生效
+         */
+        @Deprecated
         public ConfigBuilder methodThreads(int methodThreads) {
             this.methodThreads = methodThreads;
             return this;
@@ -527,6 +664,106 @@ public class Config {
             return this;
         }
 
+        public ConfigBuilder enableRelevanceRanking(boolean enableRelevanceRanking) {
+            this.enableRelevanceRanking = enableRelevanceRanking;
+            return this;
+        }
+
+        public ConfigBuilder enableTreeOfThought(boolean enableTreeOfThought) {
+            this.enableTreeOfThought = enableTreeOfThought;
+            return this;
+        }
+
+        public ConfigBuilder totBeamWidth(int totBeamWidth) {
+            this.totBeamWidth = totBeamWidth;
+            return this;
+        }
+
+        public ConfigBuilder enableJsonExport(boolean enableJsonExport) {
+            this.enableJsonExport = enableJsonExport;
+            return this;
+        }
+
+        public ConfigBuilder metadataCacheSize(int metadataCacheSize) {
+            this.metadataCacheSize = metadataCacheSize;
+            return this;
+        }
+
+        public ConfigBuilder parseThreads(int parseThreads) {
+            this.parseThreads = parseThreads;
+            return this;
+        }
+
+        public ConfigBuilder enableIncrementalParse(boolean enableIncrementalParse) {
+            this.enableIncrementalParse = enableIncrementalParse;
+            return this;
+        }
+
+        public ConfigBuilder enableLazyResolution(boolean enableLazyResolution) {
+            this.enableLazyResolution = enableLazyResolution;
+            return this;
+        }
+
+        public ConfigBuilder enableBytecodeDependencies(boolean enableBytecodeDependencies) {
+            this.enableBytecodeDependencies = enableBytecodeDependencies;
+            return this;
+        }
+
+        public ConfigBuilder enableReactorIndex(boolean enableReactorIndex) {
+            this.enableReactorIndex = enableReactorIndex;
+            return this;
+        }
+
+        public ConfigBuilder schedulePolicy(String schedulePolicy) {
+            this.schedulePolicy = SchedulePolicy.fromString(schedulePolicy);
+            return this;
+        }
+
+        public ConfigBuilder enableVirtualThreads(boolean enableVirtualThreads) {
+            this.enableVirtualThreads = enableVirtualThreads;
+            return this;
+        }
+
+        public ConfigBuilder enablePipeline(boolean enablePipeline) {
+            this.enablePipeline = enablePipeline;
+            return this;
+        }
+
+        public ConfigBuilder speculativeAttempts(int speculativeAttempts) {
+            this.speculativeAttempts = Math.max(1, speculativeAttempts);
+            return this;
+        }
+
+        public ConfigBuilder enableJournal(boolean enableJournal) {
+            this.enableJournal = enableJournal;
+            return this;
+        }
+
+        public ConfigBuilder workers(int workers) {
+            this.workers = Math.max(0, workers);
+            return this;
+        }
+
+        public ConfigBuilder coverageReport(Path coverageReport) {
+            this.coverageReport = coverageReport;
+            return this;
+        }
+
+        public ConfigBuilder tokenBudget(long tokenBudget) {
+            this.tokenBudget = Math.max(0, tokenBudget);
+            return this;
+        }
+
+        public ConfigBuilder timeBudget(long timeBudget) {
+            this.timeBudget = Math.max(0, timeBudget);
+            return this;
+        }
+
+        public ConfigBuilder typeIndexDir(Path typeIndexDir) {
+            this.typeIndexDir = typeIndexDir;
+            return this;
+        }
+
         public ConfigBuilder model(String model) {
             this.model = Model.fromString(model);
             this.maxPromptTokens = this.model.getDefaultConfig().getContextLength() * 2 / 3;
@@ -684,6 +921,27 @@ public class Config {
             config.setMinErrorTokens(this.minErrorTokens);
             config.setSleepTime(this.sleepTime);
             config.setDependencyDepth(this.dependencyDepth);
+            config.setEnableRelevanceRanking(this.enableRelevanceRanking);
+            config.setEnableTreeOfThought(this.enableTreeOfThought);
+            config.setTotBeamWidth(this.totBeamWidth);
+            config.setEnableJsonExport(this.enableJsonExport);
+            config.setMetadataCacheSize(this.metadataCacheSize);
+            MetadataCache.setMaximumSize(this.metadataCacheSize);
+            config.setParseThreads(this.parseThreads);
+            config.setEnableIncrementalParse(this.enableIncrementalParse);
+            config.setEnableLazyResolution(this.enableLazyResolution);
+            config.setEnableBytecodeDependencies(this.enableBytecodeDependencies);
+            config.setEnableReactorIndex(this.enableReactorIndex);
+            config.setSchedulePolicy(this.schedulePolicy);
+            config.setEnableVirtualThreads(this.enableVirtualThreads);
+            config.setEnablePipeline(this.enablePipeline);
+            config.setSpeculativeAttempts(this.speculativeAttempts);
+            config.setEnableJournal(this.enableJournal);
+            config.setWorkers(this.workers);
+            config.setCoverageReport(this.coverageReport);
+            config.setTokenBudget(this.tokenBudget);
+            config.setTimeBudget(this.timeBudget);
+            config.setTypeIndexDir(this.typeIndexDir);
             config.setModel(this.model);
             config.setTemperature(this.temperature);
             config.setTopP(this.topP);
@@ -717,13 +975,27 @@ public class Config {
         return apiKey;
     }
 
+    /**
+     * 获取简单类名到完整类名的索引，首次使用时加载，之后在内存中共享
+     *
+     * @return 类名索引
+     * @throws IOException 项目尚未解析时抛出
+     */
+    public ClassNameIndex getClassNameIndex() throws IOException {
+        return ClassNameIndex.of(classNameMapPath);
+    }
+
     public void print() {
         log.info("\n========================== Configuration ==========================\n");
         log.info(" Multithreading >>>> " + this.isEnableMultithreading());
         if (this.isEnableMultithreading()) {
-            log.info(" - Class threads: " + this.getClassThreads() + ", Method threads: " + this.getMethodThreads());
+            log.info(" - Max threads: " + this.getMaxThreads());
         }
         log.info(" Stop when success >>>> " + this.isStopWhenSuccess());
+        log.info(" Tree of thought >>>> " + this.isEnableTreeOfThought());
+        if (this.isEnableTreeOfThought()) {
+            log.info(" - Beam width: " + this.getTotBeamWidth());
+        }
         log.info(" No execution >>>> " + this.isNoExecution());
         log.info(" Enable Merge >>>> " + this.isEnableMerge());
         log.info(" --- ");
@@ -744,6 +1016,23 @@ public class Config {
         log.info(" MaxPromptTokens >>> " + this.getMaxPromptTokens());
         log.info(" SleepTime >>> " + this.getSleepTime());
         log.info(" DependencyDepth >>> " + this.getDependencyDepth());
+        log.info(" RelevanceRanking >>> " + this.isEnableRelevanceRanking());
+        log.info(" JsonExport >>> " + this.isEnableJsonExport());
+        log.info(" MetadataCacheSize >>> " + this.getMetadataCacheSize());
+        log.info(" ParseThreads >>> " + this.getParseThreads());
+        log.info(" IncrementalParse >>> " + this.isEnableIncrementalParse());
+        log.info(" LazyResolution >>> " + this.isEnableLazyResolution());
+        log.info(" BytecodeDependencies >>> " + this.isEnableBytecodeDependencies());
+        log.info(" ReactorIndex >>> " + this.isEnableReactorIndex());
+        log.info(" SchedulePolicy >>> " + this.getSchedulePolicy().getPolicyName());
+        log.info(" VirtualThreads >>> " + this.isEnableVirtualThreads());
+        log.info(" Pipeline >>> " + this.isEnablePipeline());
+        log.info(" SpeculativeAttempts >>> " + this.getSpeculativeAttempts());
+        log.info(" Journal >>> " + this.isEnableJournal());
+        log.info(" Workers >>> " + this.getWorkers());
+        log.info(" CoverageReport >>> " + this.getCoverageReport());
+        log.info(" TokenBudget >>> " + this.getTokenBudget());
+        log.info(" TimeBudget >>> " + this.getTimeBudget());
         log.info("\n===================================================================\n");
         try {
             Thread.sleep(1000);
@@ -0,0 +1,43 @@
+package zju.cst.aces.api.config;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+public enum SchedulePolicy {
+    /**
+     * 按源文件和方法的声明顺序生成
+     */
+    SOURCE_ORDER("source-order"),
+    /**
+     * 先生成被依赖的类和方法，再生成依赖它们的类和方法
+     */
+    LEAF_FIRST("leaf-first"),
+    /**
+     * 先生成被最多类和方法依赖的类和方法
+     */
+    HUB_FIRST("hub-first"),
+    /**
+     * 先生成单位成本预期收益最高的类和方法，按覆盖率、圈复杂度、依赖扇出和估算的提示大小打分
+     */
+    PRIORITY("priority");
+
+    private final String policyName;
+
+    SchedulePolicy(String policyName) {
+        this.policyName = policyName;
+    }
+
+    public String getPolicyName() {
+        return policyName;
+    }
+
+    public static SchedulePolicy fromString(String policyName) {
+        for (SchedulePolicy policy : SchedulePolicy.values()) {
+            if (policy.getPolicyName().equalsIgnoreCase(policyName) || policy.name().equalsIgnoreCase(policyName)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("No schedule policy with name " + policyName +
+                "\nSupport policies: " + Arrays.stream(SchedulePolicy.values()).map(SchedulePolicy::getPolicyName).collect(Collectors.joining(", ")));
+    }
+}
@@ -5,6 +5,7 @@ import zju.cst.aces.api.Generator;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.Message;
 import zju.cst.aces.runner.AbstractRunner;
+import zju.cst.aces.runner.Pipeline;
 import zju.cst.aces.util.AskGPT;
 import zju.cst.aces.util.CodeExtractor;
 
@@ -25,7 +26,7 @@ public class ChatGenerator implements Generator {
     }
 
     public static Response chat(Config config, List<Message> messages) {
-        Response response = new AskGPT(config).askChatGPT(messages);
+        Response response = Pipeline.of(config).run(Pipeline.Stage.INFER, () -> new AskGPT(config).askChatGPT(messages));
         if (response == null) {
             throw new RuntimeException("Response is null, failed to get response.");
         }
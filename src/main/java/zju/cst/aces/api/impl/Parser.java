@@ -36,7 +36,7 @@ public class Parser implements PreProcess {
             config.getLog().info("\n==========================\n[ChatUniTest] Skip pom-packaging ...");
             return;
         }
-        if (! config.getParseOutput().toFile().exists()) {
+        if (config.isEnableIncrementalParse() || ! config.getParseOutput().toFile().exists()) {
             config.getLog().info("\n==========================\n[ChatUniTest] Parsing class info ...");
             parser.parse();
             config.getLog().info("\n==========================\n[ChatUniTest] Parse finished");
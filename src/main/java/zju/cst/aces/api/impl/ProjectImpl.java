@@ -6,6 +6,7 @@ import zju.cst.aces.api.Project;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ProjectImpl implements Project {
@@ -59,4 +60,14 @@ public class ProjectImpl implements Project {
         return Paths.get(project.getBuild().getOutputDirectory());
     }
 
+    @Override
+    public List<Project> getUpstreamProjects() {
+        List<Project> upstream = new ArrayList<>();
+        // the reactor modules this project depends on, filled in by maven for multi-module builds
+        for (MavenProject reference : project.getProjectReferences().values()) {
+            upstream.add(new ProjectImpl(reference));
+        }
+        return upstream;
+    }
+
 }
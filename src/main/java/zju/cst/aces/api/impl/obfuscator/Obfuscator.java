@@ -261,7 +261,7 @@ public class Obfuscator {
     }
 
     public Map<String, String> obfuscateDep(Map<String, String> dep) {
-        Map<String, String> obfuscatedDep = new HashMap<>();
+        Map<String, String> obfuscatedDep = new LinkedHashMap<>();
         for (String key : dep.keySet()) {
             SymbolFrame sf = findSymbolFrameByClass(key);
             if (sf == null) {
@@ -276,7 +276,7 @@ public class Obfuscator {
     }
 
     public Map<String, String> deobfuscateDep(Map<String, String> dep) {
-        Map<String, String> deobfuscatedDep = new HashMap<>();
+        Map<String, String> deobfuscatedDep = new LinkedHashMap<>();
         for (String key : dep.keySet()) {
             deobfuscatedDep.put(deobfuscateName(key), deobfuscateJava(dep.get(key)));
         }
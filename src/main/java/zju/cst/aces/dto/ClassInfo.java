@@ -3,6 +3,7 @@ package zju.cst.aces.dto;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import lombok.Data;
+import zju.cst.aces.parser.ParseStore;
 
 import java.util.List;
 import java.util.Map;
@@ -34,8 +35,13 @@ public class ClassInfo {
     public List<String> getterSetterSigs;
     public List<String> getterSetterBrief;
     public Map<String, Set<String>> constructorDeps;
+    public boolean unresolved;
+    public String sourcePath;
     public String compilationUnitCode;
     public String classDeclarationCode;
+    public String compilationUnitCodeKey;
+    public String classDeclarationCodeKey;
+    private transient ParseStore codeStore;
 
     public ClassInfo(CompilationUnit cu, ClassOrInterfaceDeclaration classNode, int index, String classSignature,
                      List<String> imports, List<String> fields, List<String> superClasses, Map<String, String> methodSigs,
@@ -67,6 +73,26 @@ public class ClassInfo {
         this.classDeclarationCode = classDeclarationCode;
     }
 
+    /**
+     * The code of the whole file, loaded from the parse store when the class info was read from there.
+     */
+    public String getCompilationUnitCode() {
+        if (compilationUnitCode != null || codeStore == null) {
+            return compilationUnitCode;
+        }
+        return codeStore.getCode(compilationUnitCodeKey);
+    }
+
+    /**
+     * The code of the class declaration, loaded from the parse store when the class info was read from there.
+     */
+    public String getClassDeclarationCode() {
+        if (classDeclarationCode != null || codeStore == null) {
+            return classDeclarationCode;
+        }
+        return codeStore.getCode(classDeclarationCodeKey);
+    }
+
     private String getPackageDeclaration(CompilationUnit compilationUnit) {
         if (compilationUnit.getPackageDeclaration().isPresent()) {
             return compilationUnit.getPackageDeclaration().get().toString().trim();
@@ -3,9 +3,8 @@ package zju.cst.aces.dto;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import zju.cst.aces.api.config.Config;
+import zju.cst.aces.util.ExampleUsageStore;
 
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -22,30 +21,24 @@ public class ExampleUsage {
     }
 
     public Map<String, List<String>> loadUsages(Path path, String name) {
-        // read examplePath and load methodUsages
-        Map<String, List<String>> usages = null;
-        if (!path.toFile().exists()) {
-            return null;
-        }
+        // examplePath is parsed once and shared, see ExampleUsageStore
         try {
-            usages = (Map<String, List<String>>) GSON.fromJson(Files.readString(path, StandardCharsets.UTF_8), Map.class).get(name);
+            ExampleUsageStore store = ExampleUsageStore.of(path);
+            return store == null ? null : store.getUsages(name);
         } catch (Exception e) {
             throw new RuntimeException("In ExampleUsage.loadUsages: " + e);
         }
-        return usages;
     }
 
     public String getShortestUsage(String methodSig) {
         if (methodUsages == null) {
             return null;
         }
-        // sort the list and return the shortest usage of the list
-        if (methodUsages.containsKey(methodSig)) {
-            List<String> usages = methodUsages.get(methodSig);
-            usages.sort((a, b) -> a.length() - b.length());
-            return usages.get(0);
-        } else {
+        // usages are sorted by length when the store is loaded
+        List<String> usages = methodUsages.get(methodSig);
+        if (usages == null || usages.isEmpty()) {
             return null;
         }
+        return usages.get(0);
     }
 }
@@ -21,6 +21,7 @@ public class MethodInfo {
     public boolean isAbstract;
     public List<String> parameters;
     public Map<String, Set<String>> dependentMethods;
+    public boolean unresolved;
 
     public MethodInfo(String className, String methodName, String brief, String methodSignature,
                       String sourceCode, List<String> parameters, Map<String, Set<String>> dependentMethods) {
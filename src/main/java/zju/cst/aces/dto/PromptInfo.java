@@ -17,8 +17,8 @@ public class PromptInfo {
     public String context; // context with only focal method.
     public String otherMethodBrief;
     public String otherMethodBodies;
-    public Map<String, String> constructorDeps = new HashMap<>(); // dependent classes in constructor.
-    public Map<String, String> methodDeps = new HashMap<>(); // dependent classes in method parameters and body.
+    public Map<String, String> constructorDeps = new LinkedHashMap<>(); // dependent classes in constructor, most relevant first.
+    public Map<String, String> methodDeps = new LinkedHashMap<>(); // dependent classes in method parameters and body, most relevant first.
     public TestMessage errorMsg;
     public String unitTest = "";
     public String fullTestName;
@@ -48,6 +48,7 @@ public class PromptInfo {
         this.setMethodSignature(p.getMethodSignature());
         this.setContext(p.getContext());
         this.setOtherMethodBrief(p.getOtherMethodBrief());
+        this.setOtherMethodBodies(p.getOtherMethodBodies());
         this.setConstructorDeps(p.getConstructorDeps());
         this.setMethodDeps(p.getMethodDeps());
         this.setErrorMsg(p.getErrorMsg());
@@ -60,6 +61,21 @@ public class PromptInfo {
         this.setClassInfo(p.getClassInfo());
     }
 
+    /**
+     * Copy the round-0 skeleton for a new attempt, sharing the immutable context
+     * but with fresh per-attempt state (test name, unit test, error, records).
+     */
+    public PromptInfo copyForAttempt() {
+        PromptInfo p = new PromptInfo(this);
+        p.setErrorMsg(null);
+        p.setUnitTest("");
+        p.setFullTestName(null);
+        p.setTestPath(null);
+        p.setCorrectTests(new HashMap<>());
+        p.setRecords(new ArrayList<>());
+        return p;
+    }
+
     public void addMethodDeps(String depClassName, String methodDep) {
         if (methodDep == null) {
             return;
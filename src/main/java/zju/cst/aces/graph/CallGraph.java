@@ -0,0 +1,135 @@
+package zju.cst.aces.graph;
+
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+import zju.cst.aces.runner.AbstractRunner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Call graph over the parsed methods of a project, answering which classes and methods a method reaches within a
+ * number of calls.
+ * <p>
+ * A closure is computed by a breadth-first walk that expands every method at most once, so cycles and shared
+ * callees cost nothing extra, and it is memoized per method and depth for the rest of the run. The graph is shared
+ * per parse output and dropped when the project is parsed again.
+ */
+public class CallGraph {
+    private static final Map<Path, CallGraph> GRAPHS = new ConcurrentHashMap<>();
+
+    private final Config config;
+    private final Map<String, Closure> closures = new ConcurrentHashMap<>();
+
+    /**
+     * The classes reached from a method, with the methods called on each of them.
+     */
+    public static class Closure {
+        private final Map<String, Set<String>> methodDeps = new LinkedHashMap<>();
+        private final Map<String, Set<String>> constructorDeps = new LinkedHashMap<>();
+
+        /**
+         * Classes whose methods are called, in the order they are reached, with the called methods.
+         */
+        public Map<String, Set<String>> getMethodDeps() {
+            return Collections.unmodifiableMap(methodDeps);
+        }
+
+        /**
+         * Classes the constructors of the expanded classes depend on.
+         */
+        public Map<String, Set<String>> getConstructorDeps() {
+            return Collections.unmodifiableMap(constructorDeps);
+        }
+
+        private void addAll(Closure other) {
+            merge(methodDeps, other.methodDeps);
+            merge(constructorDeps, other.constructorDeps);
+        }
+
+        private static void merge(Map<String, Set<String>> target, Map<String, Set<String>> source) {
+            source.forEach((className, sigs) -> target.computeIfAbsent(className, k -> new LinkedHashSet<>()).addAll(sigs));
+        }
+    }
+
+    private CallGraph(Config config) {
+        this.config = config;
+    }
+
+    public static CallGraph of(Config config) {
+        return GRAPHS.computeIfAbsent(config.getParseOutput().toAbsolutePath().normalize(), k -> new CallGraph(config));
+    }
+
+    /**
+     * Drop all memoized closures, called when the parse output is rewritten.
+     */
+    public static void invalidateAll() {
+        GRAPHS.clear();
+    }
+
+    /**
+     * The dependencies reached from some methods of a class. With depth {@code d}, the methods are expanded
+     * together with the methods up to {@code d - 2} calls away from them: each expanded method adds the methods it
+     * calls and the constructor deps of its class.
+     *
+     * @param className  full name of the class declaring the methods
+     * @param methodSigs signatures of the methods
+     * @param depth      dependency depth, nothing is reached below 2
+     */
+    public Closure getClosure(String className, Set<String> methodSigs, int depth) throws IOException {
+        Closure closure = new Closure();
+        if (depth <= 1) {
+            return closure;
+        }
+        for (String methodSig : methodSigs) {
+            String key = className + "#" + methodSig + "@" + depth;
+            Closure methodClosure = closures.get(key);
+            if (methodClosure == null) {
+                methodClosure = compute(className, methodSig, depth);
+                closures.putIfAbsent(key, methodClosure);
+            }
+            closure.addAll(methodClosure);
+        }
+        return closure;
+    }
+
+    public int size() {
+        return closures.size();
+    }
+
+    private Closure compute(String className, String methodSig, int depth) throws IOException {
+        Closure closure = new Closure();
+        Set<String> expanded = new HashSet<>();
+        Deque<String[]> queue = new ArrayDeque<>();
+        queue.add(new String[]{className, methodSig});
+        // every level is one call further away, so a method is first reached with its largest remaining depth
+        for (int remaining = depth; remaining > 1 && !queue.isEmpty(); remaining--) {
+            Deque<String[]> next = new ArrayDeque<>();
+            for (String[] method : queue) {
+                if (!expanded.add(method[0] + "#" + method[1])) {
+                    continue;
+                }
+                ClassInfo classInfo = AbstractRunner.getClassInfo(config, method[0]);
+                if (classInfo == null) {
+                    continue;
+                }
+                Closure.merge(closure.constructorDeps, classInfo.constructorDeps);
+                MethodInfo methodInfo = AbstractRunner.getMethodInfo(config, classInfo, method[1]);
+                if (methodInfo == null) {
+                    continue;
+                }
+                Closure.merge(closure.methodDeps, methodInfo.dependentMethods);
+                methodInfo.dependentMethods.forEach((depClassName, depMethods) -> {
+                    for (String depMethod : depMethods) {
+                        next.add(new String[]{depClassName, depMethod});
+                    }
+                });
+            }
+            queue = next;
+        }
+        return closure;
+    }
+}
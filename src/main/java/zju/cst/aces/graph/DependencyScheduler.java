@@ -0,0 +1,207 @@
+package zju.cst.aces.graph;
+
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.api.config.SchedulePolicy;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+import zju.cst.aces.parser.ClassNameIndex;
+import zju.cst.aces.runner.AbstractRunner;
+import zju.cst.aces.util.MethodPriority;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Orders the classes of a project and the methods of a class for test generation, following the dependency graph
+ * built from the parsed dependent methods and constructor dependencies.
+ * <p>
+ * With {@link SchedulePolicy#LEAF_FIRST} a class or method comes after everything it depends on, the members of a
+ * dependency cycle keep their source order. With {@link SchedulePolicy#HUB_FIRST} the ones with the most dependents
+ * come first. Either way the tests of a dependency are usually generated, and validated, before the tests of its
+ * dependents. {@link SchedulePolicy#SOURCE_ORDER} keeps the source order and does not load any dependency info.
+ * {@link SchedulePolicy#PRIORITY} does not follow the graph, it ranks by expected yield per cost, see
+ * {@link MethodPriority}.
+ */
+public class DependencyScheduler {
+
+    private static class Unit extends Node<String> {
+        private final int position;
+
+        Unit(String name, int position) {
+            super(name);
+            this.position = position;
+        }
+    }
+
+    private static class Dependency extends Edge<Unit> {
+        Dependency(Unit dependent, Unit dependency) {
+            super(dependent, dependency);
+        }
+    }
+
+    private static class DependencyGraph extends Graph<Unit, Dependency> {
+        private final Map<String, Unit> units = new LinkedHashMap<>();
+        private final Set<String> edges = new HashSet<>();
+
+        DependencyGraph(List<String> names) {
+            for (String name : names) {
+                if (!units.containsKey(name)) {
+                    Unit unit = new Unit(name, units.size());
+                    units.put(name, unit);
+                    addNode(unit);
+                }
+            }
+        }
+
+        void addDependency(String dependent, String dependency) {
+            Unit source = units.get(dependent);
+            Unit target = units.get(dependency);
+            if (source == null || target == null || source == target || !edges.add(dependent + "\n" + dependency)) {
+                return;
+            }
+            addEdge(new Dependency(source, target));
+        }
+    }
+
+    /**
+     * The java files of a project in generation order. Files whose class cannot be found in the parse output keep
+     * their relative order after the others.
+     */
+    public static List<String> orderClassPaths(Config config, List<String> classPaths) {
+        if (isSourceOrder(config)) {
+            return classPaths;
+        }
+        Map<String, String> pathsByClass = new LinkedHashMap<>();
+        List<String> unknown = new ArrayList<>();
+        ClassNameIndex classNameIndex;
+        try {
+            classNameIndex = config.getClassNameIndex();
+        } catch (IOException e) {
+            return classPaths;
+        }
+        for (String classPath : classPaths) {
+            String fullClassName = resolveClassPath(classNameIndex, classPath);
+            if (fullClassName == null || pathsByClass.putIfAbsent(fullClassName, classPath) != null) {
+                unknown.add(classPath);
+            }
+        }
+        List<String> ordered = new ArrayList<>();
+        for (String fullClassName : orderClasses(config, new ArrayList<>(pathsByClass.keySet()))) {
+            ordered.add(pathsByClass.get(fullClassName));
+        }
+        ordered.addAll(unknown);
+        return ordered;
+    }
+
+    /**
+     * The class declared by a java file. A simple name shared by several classes is resolved to the candidate whose
+     * package matches the directories of the file.
+     */
+    private static String resolveClassPath(ClassNameIndex classNameIndex, String classPath) {
+        String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
+        List<String> candidates = classNameIndex.getCandidates(className);
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        String path = classPath.substring(0, classPath.lastIndexOf("."));
+        for (String candidate : candidates) {
+            if (path.endsWith(File.separator + candidate.replace(".", File.separator))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Classes in generation order, ordered by the dependencies between them.
+     */
+    public static List<String> orderClasses(Config config, List<String> fullClassNames) {
+        if (isSourceOrder(config)) {
+            return fullClassNames;
+        }
+        if (config.getSchedulePolicy() == SchedulePolicy.PRIORITY) {
+            return MethodPriority.orderClasses(config, fullClassNames);
+        }
+        DependencyGraph graph = new DependencyGraph(fullClassNames);
+        try {
+            for (String fullClassName : fullClassNames) {
+                ClassInfo classInfo = AbstractRunner.getClassInfo(config, fullClassName);
+                if (classInfo == null) {
+                    continue;
+                }
+                for (String dependency : classInfo.constructorDeps.keySet()) {
+                    graph.addDependency(fullClassName, dependency);
+                }
+                for (String methodSig : classInfo.methodSigs.keySet()) {
+                    MethodInfo methodInfo = AbstractRunner.getMethodInfo(config, classInfo, methodSig);
+                    if (methodInfo == null) {
+                        continue;
+                    }
+                    for (String dependency : methodInfo.dependentMethods.keySet()) {
+                        graph.addDependency(fullClassName, dependency);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In DependencyScheduler.orderClasses: " + e);
+        }
+        return order(graph, config.getSchedulePolicy());
+    }
+
+    /**
+     * Method signatures of a class in generation order, ordered by the calls between the methods of the class.
+     */
+    public static List<String> orderMethods(Config config, ClassInfo classInfo) {
+        List<String> methodSigs = new ArrayList<>(classInfo.methodSigs.keySet());
+        if (isSourceOrder(config)) {
+            return methodSigs;
+        }
+        if (config.getSchedulePolicy() == SchedulePolicy.PRIORITY) {
+            return MethodPriority.orderMethods(config, classInfo);
+        }
+        DependencyGraph graph = new DependencyGraph(methodSigs);
+        try {
+            for (String methodSig : methodSigs) {
+                MethodInfo methodInfo = AbstractRunner.getMethodInfo(config, classInfo, methodSig);
+                if (methodInfo == null) {
+                    continue;
+                }
+                Set<String> calls = methodInfo.dependentMethods.get(classInfo.fullClassName);
+                if (calls != null) {
+                    for (String call : calls) {
+                        graph.addDependency(methodSig, call);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In DependencyScheduler.orderMethods: " + e);
+        }
+        return order(graph, config.getSchedulePolicy());
+    }
+
+    private static boolean isSourceOrder(Config config) {
+        return config.getSchedulePolicy() == null || config.getSchedulePolicy() == SchedulePolicy.SOURCE_ORDER;
+    }
+
+    private static List<String> order(DependencyGraph graph, SchedulePolicy policy) {
+        List<String> ordered = new ArrayList<>(graph.size());
+        if (policy == SchedulePolicy.HUB_FIRST) {
+            List<Unit> units = new ArrayList<>(graph.getNodes());
+            // stable, so units with as many dependents keep their source order
+            units.sort(Comparator.comparingInt((Unit unit) -> graph.inDegree(graph.indexOf(unit))).reversed());
+            for (Unit unit : units) {
+                ordered.add(unit.getData());
+            }
+            return ordered;
+        }
+        // the components come dependencies first
+        for (List<Unit> component : GraphHelper.stronglyConnectedComponents(graph)) {
+            component.sort(Comparator.comparingInt(unit -> unit.position));
+            for (Unit unit : component) {
+                ordered.add(unit.getData());
+            }
+        }
+        return ordered;
+    }
+}
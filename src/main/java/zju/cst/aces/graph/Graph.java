@@ -1,23 +1,43 @@
 package zju.cst.aces.graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * A directed graph. Every node gets a dense int id, its position in {@link #getNodes()}, and the edges are indexed
+ * in both directions as arrays of node ids, so traversals visit each edge once instead of scanning the edge list.
+ */
 public abstract class Graph<N extends Node<?>, E extends Edge<N>> {
     private List<N> nodes;
     private List<E> edges;
+    private final Map<N, Integer> ids = new HashMap<>();
+    private final Adjacency successors = new Adjacency();
+    private final Adjacency predecessors = new Adjacency();
 
     public Graph() {
         this.nodes = new ArrayList<>();
         this.edges = new ArrayList<>();
     }
 
+    /**
+     * Add a node, a node already in the graph is not added again.
+     */
     public void addNode(N node) {
-        nodes.add(node);
+        idOf(node);
     }
 
+    /**
+     * Add an edge, together with its source and target if they are not in the graph yet.
+     */
     public void addEdge(E edge) {
+        int source = idOf(edge.getSource());
+        int target = idOf(edge.getTarget());
         edges.add(edge);
+        successors.add(source, target);
+        predecessors.add(target, source);
     }
 
     public List<N> getNodes() {
@@ -27,4 +47,86 @@ public abstract class Graph<N extends Node<?>, E extends Edge<N>> {
     public List<E> getEdges() {
         return edges;
     }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * The id of a node, -1 if it is not in the graph.
+     */
+    public int indexOf(N node) {
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    public N getNode(int id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * The targets of the edges from a node, in the order the edges were added. The array is not a copy, callers must
+     * not modify it and must only read the first {@link #outDegree(int)} ids.
+     */
+    public int[] successors(int id) {
+        return successors.get(id);
+    }
+
+    public int outDegree(int id) {
+        return successors.size(id);
+    }
+
+    /**
+     * The sources of the edges to a node, in the order the edges were added, with the same contract as
+     * {@link #successors(int)}.
+     */
+    public int[] predecessors(int id) {
+        return predecessors.get(id);
+    }
+
+    public int inDegree(int id) {
+        return predecessors.size(id);
+    }
+
+    private int idOf(N node) {
+        Integer id = ids.get(node);
+        if (id == null) {
+            id = nodes.size();
+            ids.put(node, id);
+            nodes.add(node);
+        }
+        return id;
+    }
+
+    /**
+     * Growable int arrays of neighbour ids, one per node.
+     */
+    private static class Adjacency {
+        private static final int[] EMPTY = new int[0];
+        private int[][] lists = new int[16][];
+        private int[] sizes = new int[16];
+
+        void add(int from, int to) {
+            if (from >= lists.length) {
+                int capacity = Math.max(from + 1, lists.length * 2);
+                lists = Arrays.copyOf(lists, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            int[] list = lists[from];
+            if (list == null) {
+                list = lists[from] = new int[4];
+            } else if (sizes[from] == list.length) {
+                list = lists[from] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[sizes[from]++] = to;
+        }
+
+        int[] get(int id) {
+            return id < lists.length && lists[id] != null ? lists[id] : EMPTY;
+        }
+
+        int size(int id) {
+            return id < sizes.length ? sizes[id] : 0;
+        }
+    }
 }
@@ -2,63 +2,196 @@ package zju.cst.aces.graph;
 
 import java.util.*;
 
-class GraphHelper {
+/**
+ * Traversals over the adjacency index of a {@link Graph}. Nodes are handled by id with bitset visited sets and int
+ * arrays as stacks and queues, so each traversal is linear in the nodes and edges it reaches.
+ */
+public class GraphHelper {
 
     public static <N extends Node<?>, E extends Edge<N>> Set<N> findPredecessors(Graph<N, E> graph, N startNode) {
-        Set<N> predecessors = new HashSet<>();
-        Queue<N> queue = new LinkedList<>();
-        queue.add(startNode);
-
-        while (!queue.isEmpty()) {
-            N current = queue.poll();
-            for (E edge : graph.getEdges()) {
-                if (edge.getTarget().equals(current) && !predecessors.contains(edge.getSource())) {
-                    predecessors.add(edge.getSource());
-                    queue.add(edge.getSource());
+        Set<N> predecessors = new LinkedHashSet<>();
+        int start = graph.indexOf(startNode);
+        if (start < 0) {
+            return predecessors;
+        }
+        BitSet visited = new BitSet(graph.size());
+        // the start node is only a predecessor of itself on a cycle, so it may be queued twice
+        int[] queue = new int[graph.size() + 1];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int current = queue[head++];
+            int[] sources = graph.predecessors(current);
+            for (int i = 0; i < graph.inDegree(current); i++) {
+                int source = sources[i];
+                if (!visited.get(source)) {
+                    visited.set(source);
+                    predecessors.add(graph.getNode(source));
+                    queue[tail++] = source;
                 }
             }
         }
-
         return predecessors;
     }
 
     public static <N extends Node<?>, E extends Edge<N>> List<N> dfs(Graph<N, E> graph, N startNode) {
         List<N> visited = new ArrayList<>();
-        Stack<N> stack = new Stack<>();
-        stack.push(startNode);
-
-        while (!stack.isEmpty()) {
-            N current = stack.pop();
-            if (!visited.contains(current)) {
-                visited.add(current);
-                for (E edge : graph.getEdges()) {
-                    if (edge.getSource().equals(current)) {
-                        stack.push(edge.getTarget());
-                    }
+        int start = graph.indexOf(startNode);
+        if (start < 0) {
+            visited.add(startNode);
+            return visited;
+        }
+        BitSet seen = new BitSet(graph.size());
+        // a node may be pushed once per edge to it and is expanded when first popped, so the last successor goes first
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int current = stack[--top];
+            if (seen.get(current)) {
+                continue;
+            }
+            seen.set(current);
+            visited.add(graph.getNode(current));
+            int[] targets = graph.successors(current);
+            int degree = graph.outDegree(current);
+            if (top + degree > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + degree));
+            }
+            for (int i = 0; i < degree; i++) {
+                if (!seen.get(targets[i])) {
+                    stack[top++] = targets[i];
                 }
             }
         }
-
         return visited;
     }
 
     public static <N extends Node<?>, E extends Edge<N>> List<N> bfs(Graph<N, E> graph, N startNode) {
         List<N> visited = new ArrayList<>();
-        Queue<N> queue = new LinkedList<>();
-        queue.add(startNode);
+        int start = graph.indexOf(startNode);
+        if (start < 0) {
+            visited.add(startNode);
+            return visited;
+        }
+        BitSet seen = new BitSet(graph.size());
+        int[] queue = new int[graph.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        seen.set(start);
+        while (head < tail) {
+            int current = queue[head++];
+            visited.add(graph.getNode(current));
+            int[] targets = graph.successors(current);
+            for (int i = 0; i < graph.outDegree(current); i++) {
+                if (!seen.get(targets[i])) {
+                    seen.set(targets[i]);
+                    queue[tail++] = targets[i];
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * The strongly connected components of the graph, by Tarjan's algorithm without recursion. A component is
+     * listed after every component it has an edge to, so for a call graph the callees come before their callers.
+     */
+    public static <N extends Node<?>, E extends Edge<N>> List<List<N>> stronglyConnectedComponents(Graph<N, E> graph) {
+        int n = graph.size();
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        Arrays.fill(index, -1);
+        BitSet onStack = new BitSet(n);
+        int[] stack = new int[n];
+        int stackTop = 0;
+        // the call stack of the depth-first search: the node and the position of its next successor
+        int[] callNodes = new int[n];
+        int[] callEdges = new int[n];
+        int callTop = 0;
+        int counter = 0;
+        List<List<N>> components = new ArrayList<>();
 
-        while (!queue.isEmpty()) {
-            N current = queue.poll();
-            if (!visited.contains(current)) {
-                visited.add(current);
-                for (E edge : graph.getEdges()) {
-                    if (edge.getSource().equals(current)) {
-                        queue.add(edge.getTarget());
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            callNodes[callTop] = root;
+            callEdges[callTop++] = 0;
+            index[root] = lowLink[root] = counter++;
+            stack[stackTop++] = root;
+            onStack.set(root);
+            while (callTop > 0) {
+                int node = callNodes[callTop - 1];
+                int edge = callEdges[callTop - 1];
+                if (edge < graph.outDegree(node)) {
+                    callEdges[callTop - 1]++;
+                    int target = graph.successors(node)[edge];
+                    if (index[target] < 0) {
+                        index[target] = lowLink[target] = counter++;
+                        stack[stackTop++] = target;
+                        onStack.set(target);
+                        callNodes[callTop] = target;
+                        callEdges[callTop++] = 0;
+                    } else if (onStack.get(target)) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
                     }
+                    continue;
+                }
+                callTop--;
+                if (callTop > 0) {
+                    int parent = callNodes[callTop - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+                if (lowLink[node] == index[node]) {
+                    List<N> component = new ArrayList<>();
+                    int member;
+                    do {
+                        member = stack[--stackTop];
+                        onStack.clear(member);
+                        component.add(graph.getNode(member));
+                    } while (member != node);
+                    components.add(component);
                 }
             }
         }
+        return components;
+    }
 
-        return visited;
+    /**
+     * The nodes in topological order, each node before the targets of its edges, by Kahn's algorithm.
+     *
+     * @throws IllegalArgumentException if the graph has a cycle, see {@link #stronglyConnectedComponents(Graph)}
+     */
+    public static <N extends Node<?>, E extends Edge<N>> List<N> topologicalSort(Graph<N, E> graph) {
+        int n = graph.size();
+        int[] inDegree = new int[n];
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int node = 0; node < n; node++) {
+            inDegree[node] = graph.inDegree(node);
+            if (inDegree[node] == 0) {
+                queue[tail++] = node;
+            }
+        }
+        List<N> order = new ArrayList<>(n);
+        while (head < tail) {
+            int node = queue[head++];
+            order.add(graph.getNode(node));
+            int[] targets = graph.successors(node);
+            for (int i = 0; i < graph.outDegree(node); i++) {
+                if (--inDegree[targets[i]] == 0) {
+                    queue[tail++] = targets[i];
+                }
+            }
+        }
+        if (order.size() < n) {
+            throw new IllegalArgumentException("In GraphHelper.topologicalSort: the graph has a cycle through "
+                    + (n - order.size()) + " nodes");
+        }
+        return order;
     }
-}
\ No newline at end of file
+}
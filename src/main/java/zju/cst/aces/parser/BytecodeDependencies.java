@@ -0,0 +1,440 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.nodeTypes.NodeWithTypeParameters;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.type.TypeParameter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Method dependencies read from the compiled classes of a project, instead of resolving the sources.
+ * <p>
+ * The dependent methods of a method are the targets of its invoke instructions, including those of the lambdas
+ * and anonymous or local classes declared in it, keyed by the class declaring the target. Together with the
+ * reference types of the parameters they have the same shape as the dependencies found by {@link ClassParser}.
+ * Constructor deps also include the calls of field initializers, which the compiler moves into the constructors.
+ * Close it once the parse is done to release the jar files opened for library lookups.
+ */
+public class BytecodeDependencies implements Closeable {
+    private final Map<String, ClassNode> classes;
+    private final Map<String, List<ClassNode>> enclosedClasses = new HashMap<>();
+    private final Map<String, CompiledClass> compiledClasses = new HashMap<>();
+    private final Map<String, Optional<ClassNode>> libraryClasses = new ConcurrentHashMap<>();
+    /**
+     * Finds the class files of the dependencies and the JDK, only to look up where inherited methods are declared.
+     */
+    private final URLClassLoader libraries;
+
+    /**
+     * The dependencies of the methods of one compiled class.
+     */
+    public class CompiledClass {
+        private final ClassNode node;
+        private final long lastModified;
+
+        private CompiledClass(ClassNode node, long lastModified) {
+            this.node = node;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Dependencies of a method (constructor), in the order the source parser finds them.
+         *
+         * @return the dependencies, or null if the method is not found in the class file
+         */
+        public Map<String, Set<String>> getDependentMethods(CallableDeclaration<?> declaration) {
+            MethodNode method = findMethod(declaration);
+            if (method == null) {
+                return null;
+            }
+            Map<String, Set<String>> dependentMethods = new LinkedHashMap<>();
+            for (org.objectweb.asm.Type type : getArgumentTypes(method)) {
+                String dependentType = getParameterDependency(type);
+                if (dependentType != null) {
+                    dependentMethods.putIfAbsent(dependentType, new HashSet<>());
+                }
+            }
+            addCalls(node, method, dependentMethods, new HashSet<>());
+            return dependentMethods;
+        }
+
+        /**
+         * Dependencies of all constructors, the first constructor using a class wins.
+         */
+        public Map<String, Set<String>> getConstructorDeps(ClassOrInterfaceDeclaration classNode) {
+            Map<String, Set<String>> constructorDeps = new LinkedHashMap<>();
+            for (ConstructorDeclaration c : classNode.getConstructors()) {
+                Map<String, Set<String>> tmp = getDependentMethods(c);
+                if (tmp != null) {
+                    tmp.forEach(constructorDeps::putIfAbsent);
+                }
+            }
+            return constructorDeps;
+        }
+
+        private MethodNode findMethod(CallableDeclaration<?> declaration) {
+            String name = declaration.isConstructorDeclaration() ? "<init>" : declaration.getNameAsString();
+            List<String> parameters = getParameterNames(declaration);
+            List<MethodNode> candidates = new ArrayList<>();
+            for (MethodNode method : node.methods) {
+                if ((method.access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0 || !method.name.equals(name)) {
+                    continue;
+                }
+                List<org.objectweb.asm.Type> arguments = getArgumentTypes(method);
+                if (arguments.size() != parameters.size()) {
+                    continue;
+                }
+                candidates.add(method);
+                boolean match = true;
+                for (int i = 0; i < arguments.size() && match; i++) {
+                    // type variables erase to their bound, they match any type
+                    match = parameters.get(i) == null || parameters.get(i).equals(simpleName(arguments.get(i).getClassName()));
+                }
+                if (match) {
+                    return method;
+                }
+            }
+            return candidates.size() == 1 ? candidates.get(0) : null;
+        }
+
+        /**
+         * Argument types as declared in the source, without the outer instance of an inner class constructor.
+         */
+        private List<org.objectweb.asm.Type> getArgumentTypes(MethodNode method) {
+            List<org.objectweb.asm.Type> arguments = new ArrayList<>(Arrays.asList(org.objectweb.asm.Type.getArgumentTypes(method.desc)));
+            if (method.name.equals("<init>") && isInnerClass(node) && !arguments.isEmpty()) {
+                arguments.remove(0);
+            }
+            return arguments;
+        }
+    }
+
+    private BytecodeDependencies(Map<String, ClassNode> classes, List<String> classPaths) {
+        this.classes = classes;
+        List<URL> urls = new ArrayList<>();
+        for (String classPath : classPaths) {
+            try {
+                urls.add(new File(classPath).toURI().toURL());
+            } catch (MalformedURLException e) {
+                // not a path, nothing to look up there
+            }
+        }
+        this.libraries = new URLClassLoader(urls.toArray(new URL[0]), null);
+    }
+
+    /**
+     * Read the class files under the build path of a project.
+     *
+     * @param classPaths the dependencies of the project
+     * @param threads    number of threads reading class files
+     * @return the dependencies, empty if the project is not compiled
+     */
+    public static BytecodeDependencies load(Path buildPath, List<String> classPaths, int threads) {
+        List<Path> classFiles;
+        if (buildPath == null || !Files.isDirectory(buildPath)) {
+            classFiles = Collections.emptyList();
+        } else {
+            try (Stream<Path> paths = Files.walk(buildPath)) {
+                classFiles = paths.filter(p -> p.toString().endsWith(".class") && !p.getFileName().toString().equals("module-info.class"))
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new RuntimeException("In BytecodeDependencies.load: " + e);
+            }
+        }
+        Map<String, ClassNode> classes = new ConcurrentHashMap<>();
+        Map<String, Long> lastModified = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, classFiles.size())));
+        List<Future<?>> futures = new ArrayList<>();
+        for (Path classFile : classFiles) {
+            futures.add(executor.submit(() -> {
+                ClassNode node = new ClassNode();
+                new ClassReader(Files.readAllBytes(classFile)).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                classes.put(node.name, node);
+                lastModified.put(node.name, Files.getLastModifiedTime(classFile).toMillis());
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("In BytecodeDependencies.load: " + e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        BytecodeDependencies dependencies = new BytecodeDependencies(classes, classPaths == null ? Collections.emptyList() : classPaths);
+        List<String> names = new ArrayList<>(classes.keySet());
+        // a fixed order, so classes sharing a simple name in one package resolve the same way on every run
+        Collections.sort(names);
+        for (String name : names) {
+            ClassNode node = classes.get(name);
+            if (node.outerMethod != null) {
+                dependencies.enclosedClasses.computeIfAbsent(node.outerClass + "." + node.outerMethod + node.outerMethodDesc,
+                        k -> new ArrayList<>()).add(node);
+            }
+            String simpleName = simpleName(name.replace('/', '.'));
+            if (!simpleName.isEmpty()) {
+                String packageName = name.contains("/") ? name.substring(0, name.lastIndexOf('/')).replace('/', '.') + "." : "";
+                dependencies.compiledClasses.putIfAbsent(packageName + simpleName,
+                        dependencies.new CompiledClass(node, lastModified.get(name)));
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Get the compiled class of a parsed class, as long as it was compiled after its source file was changed.
+     *
+     * @param fullClassName package and simple name, as the full class names of {@link ClassParser}
+     * @return the compiled class, or null if it is missing or outdated
+     */
+    public CompiledClass get(String fullClassName, String sourcePath) {
+        CompiledClass compiled = compiledClasses.get(fullClassName);
+        if (compiled == null || sourcePath == null) {
+            return compiled;
+        }
+        try {
+            return Files.getLastModifiedTime(Path.of(sourcePath)).toMillis() > compiled.lastModified ? null : compiled;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        libraries.close();
+    }
+
+    private void addCalls(ClassNode owner, MethodNode method, Map<String, Set<String>> dependentMethods, Set<String> visited) {
+        if (!visited.add(owner.name + "." + method.name + method.desc)) {
+            return;
+        }
+        for (AbstractInsnNode insn : method.instructions) {
+            if (insn instanceof MethodInsnNode) {
+                MethodInsnNode call = (MethodInsnNode) insn;
+                if (call.name.startsWith("<") || call.name.startsWith("access$") || call.owner.startsWith("[")) {
+                    continue;
+                }
+                String dependentType = getDeclaringType(call.owner, call.name, call.desc);
+                // methods declared by anonymous classes cannot be looked up as dependencies
+                if (simpleName(dependentType).isEmpty()) {
+                    continue;
+                }
+                dependentMethods.computeIfAbsent(dependentType, k -> new HashSet<>()).add(getSignature(call.name, call.desc));
+            } else if (insn instanceof InvokeDynamicInsnNode) {
+                // the body of a lambda is a synthetic method of the same class
+                for (Object arg : ((InvokeDynamicInsnNode) insn).bsmArgs) {
+                    if (arg instanceof Handle && ((Handle) arg).getOwner().equals(owner.name)
+                            && ((Handle) arg).getName().startsWith("lambda$")) {
+                        MethodNode lambda = findMethod(owner, ((Handle) arg).getName(), ((Handle) arg).getDesc());
+                        if (lambda != null) {
+                            addCalls(owner, lambda, dependentMethods, visited);
+                        }
+                    }
+                }
+            }
+        }
+        for (ClassNode enclosed : enclosedClasses.getOrDefault(owner.name + "." + method.name + method.desc, Collections.emptyList())) {
+            for (MethodNode m : enclosed.methods) {
+                addCalls(enclosed, m, dependentMethods, visited);
+            }
+        }
+    }
+
+    /**
+     * The class declaring a method, looked up from the class the call refers to: first along its super classes, then
+     * in the interfaces they implement. Library classes are read from the class path; if a class cannot be read the
+     * lookup stops there.
+     */
+    private String getDeclaringType(String owner, String name, String desc) {
+        List<ClassNode> superClasses = new ArrayList<>();
+        String type = owner;
+        while (type != null) {
+            ClassNode node = getClassNode(type);
+            if (node == null) {
+                return toClassName(superClasses.isEmpty() ? owner : type);
+            }
+            if (findMethod(node, name, desc) != null) {
+                return toClassName(type);
+            }
+            superClasses.add(node);
+            type = node.superName;
+        }
+        Deque<String> interfaces = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        superClasses.forEach(node -> interfaces.addAll(node.interfaces));
+        while (!interfaces.isEmpty()) {
+            String itf = interfaces.poll();
+            ClassNode node = seen.add(itf) ? getClassNode(itf) : null;
+            if (node == null) {
+                continue;
+            }
+            if (findMethod(node, name, desc) != null) {
+                return toClassName(itf);
+            }
+            interfaces.addAll(node.interfaces);
+        }
+        return toClassName(owner);
+    }
+
+    private ClassNode getClassNode(String internalName) {
+        ClassNode node = classes.get(internalName);
+        if (node != null) {
+            return node;
+        }
+        Optional<ClassNode> library = libraryClasses.get(internalName);
+        if (library == null) {
+            library = Optional.ofNullable(readLibraryClass(internalName));
+            libraryClasses.putIfAbsent(internalName, library);
+        }
+        return library.orElse(null);
+    }
+
+    private ClassNode readLibraryClass(String internalName) {
+        try (InputStream in = libraries.getResourceAsStream(internalName + ".class")) {
+            if (in == null) {
+                return null;
+            }
+            ClassNode node = new ClassNode();
+            new ClassReader(in.readAllBytes()).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return node;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String toClassName(String internalName) {
+        return internalName.replace('/', '.').replace('$', '.');
+    }
+
+    private static MethodNode findMethod(ClassNode node, String name, String desc) {
+        for (MethodNode method : node.methods) {
+            if (method.name.equals(name) && method.desc.equals(desc)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInnerClass(ClassNode node) {
+        for (InnerClassNode inner : node.innerClasses) {
+            if (inner.name.equals(node.name)) {
+                return inner.outerName != null && (inner.access & Opcodes.ACC_STATIC) == 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method signature with simple parameter type names, e.g. {@code format(String, Object[])}.
+     */
+    private static String getSignature(String name, String desc) {
+        StringBuilder sig = new StringBuilder(name).append("(");
+        org.objectweb.asm.Type[] arguments = org.objectweb.asm.Type.getArgumentTypes(desc);
+        for (int i = 0; i < arguments.length; i++) {
+            if (i > 0) {
+                sig.append(", ");
+            }
+            sig.append(simpleName(arguments[i].getClassName()));
+        }
+        return sig.append(")").toString();
+    }
+
+    /**
+     * The class a parameter depends on, the element type for arrays; collections are skipped as by the source parser.
+     */
+    private static String getParameterDependency(org.objectweb.asm.Type type) {
+        if (type.getSort() == org.objectweb.asm.Type.ARRAY) {
+            type = type.getElementType();
+        }
+        if (type.getSort() != org.objectweb.asm.Type.OBJECT) {
+            return null;
+        }
+        String name = type.getClassName().replace('$', '.');
+        if (name.equals("java.lang.Object") || name.endsWith("Map") || name.endsWith("List") || name.endsWith("Set")) {
+            return null;
+        }
+        return name;
+    }
+
+    /**
+     * Simple name of a class, without package, outer classes and the index of a local class; empty if anonymous.
+     */
+    private static String simpleName(String className) {
+        String name = className.substring(className.lastIndexOf('.') + 1);
+        name = name.substring(name.lastIndexOf('$') + 1);
+        int i = 0;
+        while (i < name.length() && Character.isDigit(name.charAt(i))) {
+            i++;
+        }
+        return name.substring(i);
+    }
+
+    /**
+     * Erased simple type names of the parameters of a declaration, null for type variables.
+     */
+    private static List<String> getParameterNames(CallableDeclaration<?> declaration) {
+        Set<String> typeVariables = new HashSet<>();
+        Node node = declaration;
+        while (node != null) {
+            if (node instanceof NodeWithTypeParameters) {
+                for (TypeParameter t : ((NodeWithTypeParameters<?>) node).getTypeParameters()) {
+                    typeVariables.add(t.getNameAsString());
+                }
+            }
+            node = node.getParentNode().orElse(null);
+        }
+        List<String> names = new ArrayList<>();
+        for (Parameter p : declaration.getParameters()) {
+            Type type = p.getType();
+            int dimensions = p.isVarArgs() ? 1 : 0;
+            while (type.isArrayType()) {
+                dimensions++;
+                type = type.asArrayType().getComponentType();
+            }
+            String name;
+            if (type.isClassOrInterfaceType()) {
+                name = type.asClassOrInterfaceType().getNameAsString();
+                if (typeVariables.contains(name)) {
+                    names.add(null);
+                    continue;
+                }
+            } else {
+                name = type.asString();
+            }
+            StringBuilder sb = new StringBuilder(name);
+            for (int i = 0; i < dimensions; i++) {
+                sb.append("[]");
+            }
+            names.add(sb.toString());
+        }
+        return names;
+    }
+}
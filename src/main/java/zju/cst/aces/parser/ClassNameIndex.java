@@ -0,0 +1,111 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Simple class name to full class name index of a parsed project.
+ * <p>
+ * The class name mapping file is read once per path and the index is shared by all threads. A parse that
+ * rewrites the mapping publishes the new index directly, so lookups never touch the file system again.
+ */
+public class ClassNameIndex {
+    private static final Gson GSON = new Gson();
+    private static final Map<Path, ClassNameIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final Map<String, List<String>> fullNames;
+
+    private ClassNameIndex(Map<String, ? extends Collection<String>> classMap) {
+        Map<String, List<String>> names = new HashMap<>();
+        classMap.forEach((name, candidates) -> {
+            List<String> sorted = new ArrayList<>(candidates);
+            Collections.sort(sorted);
+            names.put(name, Collections.unmodifiableList(sorted));
+        });
+        this.fullNames = names;
+    }
+
+    /**
+     * Get the index of a class name mapping file, loading it on first use.
+     *
+     * @throws NoSuchFileException if the project has not been parsed yet
+     */
+    public static ClassNameIndex of(Path classNameMapPath) throws IOException {
+        Path key = classNameMapPath.toAbsolutePath().normalize();
+        ClassNameIndex index = INDEXES.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (!Files.exists(key)) {
+            throw new NoSuchFileException(key.toString());
+        }
+        try {
+            Map<String, List<String>> classMap = GSON.fromJson(Files.readString(key, StandardCharsets.UTF_8),
+                    new TypeToken<Map<String, List<String>>>() {}.getType());
+            index = new ClassNameIndex(classMap == null ? Collections.emptyMap() : classMap);
+        } catch (JsonParseException e) {
+            throw new IOException("In ClassNameIndex.of: " + e);
+        }
+        ClassNameIndex existing = INDEXES.putIfAbsent(key, index);
+        return existing == null ? index : existing;
+    }
+
+    /**
+     * Replace the index of a mapping file after it has been written.
+     */
+    public static ClassNameIndex publish(Path classNameMapPath, Map<String, ? extends Collection<String>> classMap) {
+        ClassNameIndex index = new ClassNameIndex(classMap);
+        INDEXES.put(classNameMapPath.toAbsolutePath().normalize(), index);
+        return index;
+    }
+
+    /**
+     * Get the full name of a class. Full names and unknown names are returned as they are.
+     *
+     * @throws RuntimeException if several classes share the simple name
+     */
+    public String getFullClassName(String name) {
+        if (name.contains(".")) {
+            return name;
+        }
+        List<String> candidates = fullNames.get(name);
+        if (candidates == null || candidates.isEmpty()) {
+            return name;
+        }
+        if (candidates.size() > 1) {
+            throw new RuntimeException("[ChatUniTest] Multiple classes Named " + name + ": " + candidates
+                    + " Please use full qualified name!");
+        }
+        return candidates.get(0);
+    }
+
+    public List<String> getCandidates(String name) {
+        return fullNames.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * Simple names that map to more than one class, with their candidates.
+     */
+    public Map<String, List<String>> getAmbiguousNames() {
+        Map<String, List<String>> ambiguous = new TreeMap<>();
+        fullNames.forEach((name, candidates) -> {
+            if (candidates.size() > 1) {
+                ambiguous.put(name, candidates);
+            }
+        });
+        return ambiguous;
+    }
+
+    public int size() {
+        return fullNames.size();
+    }
+}
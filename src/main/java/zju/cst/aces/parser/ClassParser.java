@@ -2,7 +2,6 @@ package zju.cst.aces.parser;
 
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseResult;
-import com.github.javaparser.Position;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.ImportDeclaration;
 import com.github.javaparser.ast.Node;
@@ -10,9 +9,10 @@ import com.github.javaparser.ast.body.*;
 import com.github.javaparser.ast.expr.AssignExpr;
 import com.github.javaparser.ast.expr.FieldAccessExpr;
 import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
 import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
-import org.jetbrains.annotations.NotNull;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
@@ -23,42 +23,116 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class ClassParser {
     private static final String separator = "_";
-    private static Path classOutputPath;
-    private static ClassInfo classInfo;
-    private static JavaParser parser;
+    private static final String[] UNRESOLVED = new String[0];
+    /**
+     * Resolved method calls of the current parse, keyed by source file and position, shared by all threads.
+     * Constructors are analysed twice (for the constructor deps and as methods), the second pass hits the cache.
+     */
+    private static final Map<String, String[]> resolutionCache = new ConcurrentHashMap<>();
+    private final Path classOutputPath;
+    private final JavaParser parser;
+    private ClassInfo classInfo;
+    private String sourcePath;
+    private SourceView source;
     public int methodCount = 0;
+    /**
+     * Number of classes declared in the files parsed by {@link #parseClasses(String)}.
+     */
+    public int classCount = 0;
+    /**
+     * Full names of the classes exported by {@link #exportClasses()}.
+     */
+    public List<String> parsedClasses = new ArrayList<>();
+    /**
+     * Full names of the classes the exported classes depend on.
+     */
+    public Set<String> dependencies = new TreeSet<>();
+    /**
+     * Classes parsed by {@link #parseClasses(String)} and not exported yet.
+     */
+    private final List<ParsedClass> pending = new ArrayList<>();
     private final Config config;
+    private final ParseStore store;
+    /**
+     * Whether symbol resolution is left to {@link LazyResolver}, the parse then only does syntactic work.
+     */
+    private final boolean lazy;
+    /**
+     * Dependencies read from the compiled classes, used instead of symbol resolution when set.
+     */
+    private BytecodeDependencies bytecode;
+    private BytecodeDependencies.CompiledClass compiledClass;
+
+    private static class ParsedClass {
+        private final ClassInfo classInfo;
+        private final List<MethodInfo> methods;
+
+        ParsedClass(ClassInfo classInfo, List<MethodInfo> methods) {
+            this.classInfo = classInfo;
+            this.methods = methods;
+        }
+    }
 
     public ClassParser(Config config, String path) {
-        this.config = config;
-        this.parser = config.getParser();
-        setOutputPath(path);
+        this(config, Paths.get(path), config.getParser());
     }
 
     public ClassParser(Config config, Path path) {
+        this(config, path, config.getParser());
+    }
+
+    /**
+     * @param parser the parser of the calling thread, a JavaParser instance must not be shared between threads
+     */
+    public ClassParser(Config config, Path path, JavaParser parser) {
         this.config = config;
-        this.parser = config.getParser();
-        setOutputPath(path.toString());
+        this.parser = parser;
+        this.store = ParseStore.open(config.getParseOutput());
+        this.classOutputPath = path;
+        this.lazy = config.isEnableLazyResolution();
+    }
+
+    public void setBytecodeDependencies(BytecodeDependencies bytecode) {
+        this.bytecode = bytecode;
     }
 
     public int extractClass(String classPath) throws FileNotFoundException {
+        int classNum = parseClasses(classPath);
+        exportClasses();
+        return classNum;
+    }
+
+    /**
+     * Parse the classes of a source file without exporting them. Different instances can parse concurrently.
+     *
+     * @return the number of classes declared in the file
+     */
+    public int parseClasses(String classPath) throws FileNotFoundException {
+        sourcePath = classPath;
         File file = new File(classPath);
         ParseResult<CompilationUnit> parseResult = parser.parse(file);
         CompilationUnit cu = parseResult.getResult().orElseThrow();
+        source = SourceView.of(cu);
+        if (lazy) {
+            // the resolved dependencies are not known yet, the referenced types stand in for them
+            dependencies.addAll(getReferencedTypes(cu));
+        }
         List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
+        classCount += classes.size();
         for (ClassOrInterfaceDeclaration classDeclaration : classes) {
             try {
-                classInfo = getInfoByClass(cu, classDeclaration);
-                exportClassInfo(classInfo, classDeclaration);
-                extractMethods(cu, classDeclaration);
-                extractConstructors(cu, classDeclaration);
-
-                addClassMapping(classInfo);
+                compiledClass = bytecode == null ? null : bytecode.get(
+                        cu.getPackageDeclaration().map(p -> p.getNameAsString() + ".").orElse("") + classDeclaration.getNameAsString(), sourcePath);
+                ClassInfo info = getInfoByClass(cu, classDeclaration);
+                List<MethodInfo> methods = extractMethods(cu, classDeclaration);
+                methods.addAll(extractConstructors(cu, classDeclaration));
+                pending.add(new ParsedClass(info, methods));
                 methodCount += classDeclaration.getMethods().size();
             } catch (Exception e) {
                 config.getLog().error("In ClassParser.extractClass Exception: when parse class " + classDeclaration.getNameAsString() + " :\n" + e);
@@ -67,29 +141,61 @@ public class ClassParser {
         return classes.size();
     }
 
+    /**
+     * Assign the class indices and export the parsed classes.
+     * Indices are taken in export order, so exporting the files in a fixed order keeps them deterministic.
+     */
+    public void exportClasses() {
+        exportClasses(Collections.emptyMap());
+    }
+
+    /**
+     * Export the parsed classes, keeping the index a class had in a previous parse.
+     */
+    public void exportClasses(Map<String, Integer> previousIndices) {
+        // all classes of a file share the file code, stored with the first of them
+        String fileCodeKey = pending.isEmpty() ? null : ParseStore.fileCodeKey(pending.get(0).classInfo.fullClassName);
+        for (ParsedClass parsed : pending) {
+            classInfo = parsed.classInfo;
+            classInfo.setCompilationUnitCodeKey(fileCodeKey);
+            classInfo.setClassDeclarationCodeKey(ParseStore.classCodeKey(classInfo.fullClassName));
+            try {
+                Integer index = previousIndices.get(classInfo.fullClassName);
+                classInfo.setIndex(index != null ? index : Config.sharedInteger.getAndIncrement());
+                exportClassInfo(classInfo);
+                dependencies.addAll(classInfo.constructorDeps.keySet());
+                for (MethodInfo methodInfo : parsed.methods) {
+                    exportMethodInfo(methodInfo);
+                    dependencies.addAll(methodInfo.dependentMethods.keySet());
+                }
+                addClassMapping(classInfo);
+                parsedClasses.add(classInfo.fullClassName);
+            } catch (Exception e) {
+                config.getLog().error("In ClassParser.exportClasses Exception: when export class " + classInfo.className + " :\n" + e);
+            }
+        }
+        pending.clear();
+    }
+
     private static boolean isJavaSourceDir(Path path) {
         return Files.isDirectory(path) && Files.exists(path.resolve(
                 "src" + File.separator + "main" + File.separator + "java"));
     }
 
-    private void setOutputPath(String path) {
-        classOutputPath = Paths.get(path);
-    }
-
-    private void extractMethods(CompilationUnit cu, ClassOrInterfaceDeclaration classDeclaration) throws IOException {
-        List<MethodDeclaration> methods = classDeclaration.getMethods();
-        for (MethodDeclaration m : methods) {
-            MethodInfo info = getInfoByMethod(cu, classDeclaration, m);
-            exportMethodInfo(info, classDeclaration, m);
+    private List<MethodInfo> extractMethods(CompilationUnit cu, ClassOrInterfaceDeclaration classDeclaration) {
+        List<MethodInfo> infos = new ArrayList<>();
+        for (MethodDeclaration m : classDeclaration.getMethods()) {
+            infos.add(getInfoByMethod(cu, classDeclaration, m));
         }
+        return infos;
     }
 
-    private void extractConstructors(CompilationUnit cu, ClassOrInterfaceDeclaration classDeclaration) throws IOException {
-        List<ConstructorDeclaration> constructors = classDeclaration.getConstructors();
-        for (ConstructorDeclaration c : constructors) {
-            MethodInfo info = getInfoByMethod(cu, classDeclaration, c);
-            exportConstructorInfo(info, classDeclaration, c);
+    private List<MethodInfo> extractConstructors(CompilationUnit cu, ClassOrInterfaceDeclaration classDeclaration) {
+        List<MethodInfo> infos = new ArrayList<>();
+        for (ConstructorDeclaration c : classDeclaration.getConstructors()) {
+            infos.add(getInfoByMethod(cu, classDeclaration, c));
         }
+        return infos;
     }
 
     /**
@@ -99,8 +205,8 @@ public class ClassParser {
         ClassInfo ci = new ClassInfo(
                 cu,
                 classNode,
-                config.sharedInteger.getAndIncrement(),
-                getClassSignature(cu, classNode),
+                0,
+                source.slice(classNode.getBegin().orElseThrow(), classNode.getName().getEnd().orElseThrow()),
                 getImports(getImportDeclarations(cu)),
                 getFields(cu, classNode.getFields()),
                 getSuperClasses(classNode),
@@ -111,8 +217,11 @@ public class ClassParser {
                 getBriefConstructors(cu, classNode),
                 getGetterSetterSig(cu, classNode),
                 getGetterSetter(cu, classNode),
-                getConstructorDeps(cu, classNode));
+                compiledClass != null ? compiledClass.getConstructorDeps(classNode)
+                        : lazy ? new LinkedHashMap<>() : getConstructorDeps(cu, classNode));
 
+        ci.setUnresolved(compiledClass == null && lazy && hasConstructors(classNode));
+        ci.setSourcePath(sourcePath);
         ci.setPublic(classNode.isPublic());
         ci.setAbstract(classNode.isAbstract());
         ci.setInterface(classNode.isInterface());
@@ -125,7 +234,9 @@ public class ClassParser {
     /**
      * Generate extracted information of focal method(constructor).
      */
-    private MethodInfo getInfoByMethod(CompilationUnit cu, ClassOrInterfaceDeclaration classNode, CallableDeclaration node) {
+    private MethodInfo getInfoByMethod(CompilationUnit cu, ClassOrInterfaceDeclaration classNode, CallableDeclaration<?> node) {
+        Map<String, Set<String>> compiledDeps = compiledClass == null ? null : compiledClass.getDependentMethods(node);
+        boolean resolveLater = compiledDeps == null && lazy && needsResolution(node);
         MethodInfo mi = new MethodInfo(
                 classNode.getNameAsString(),
                 node.getNameAsString(),
@@ -133,8 +244,10 @@ public class ClassParser {
                 getMethodSig(node),
                 getMethodCode(cu, node),
                 getParameters(node),
-                getDependentMethods(cu, node));
+                compiledDeps != null ? compiledDeps
+                        : lazy ? new LinkedHashMap<>() : getDependentMethods(cu, node));
 
+        mi.setUnresolved(resolveLater);
         mi.setUseField(useField(node));
         mi.setConstructor(node.isConstructorDeclaration());
         mi.setGetSet(isGetSet2(node));
@@ -144,6 +257,22 @@ public class ClassParser {
         return mi;
     }
 
+    /**
+     * Resolve the constructor dependencies of a class skipped by a lazy parse.
+     */
+    Map<String, Set<String>> resolveConstructorDeps(String sourcePath, CompilationUnit cu, ClassOrInterfaceDeclaration classNode) {
+        this.sourcePath = sourcePath;
+        return getConstructorDeps(cu, classNode);
+    }
+
+    /**
+     * Resolve the dependent methods of a method (constructor) skipped by a lazy parse.
+     */
+    Map<String, Set<String>> resolveDependentMethods(String sourcePath, CompilationUnit cu, CallableDeclaration<?> node) {
+        this.sourcePath = sourcePath;
+        return getDependentMethods(cu, node);
+    }
+
     private Map<String, Set<String>> getConstructorDeps(CompilationUnit cu, ClassOrInterfaceDeclaration classNode) {
         Map<String, Set<String>> constructorDeps = new LinkedHashMap<>();
         for (ConstructorDeclaration c : classNode.getConstructors()) {
@@ -183,7 +312,7 @@ public class ClassParser {
     /**
      * Get method signature (the parameters in signature are qualified name)
      */
-    private String getMethodSig(CallableDeclaration node) {
+    private String getMethodSig(CallableDeclaration<?> node) {
         if (node instanceof MethodDeclaration) {
             return node.getSignature().asString();
         } else {
@@ -284,22 +413,19 @@ public class ClassParser {
      * Note:
      * Get source code from begin of method to begin of body
      */
-    private String getBriefMethod(CompilationUnit cu, CallableDeclaration node) {
+    private String getBriefMethod(CompilationUnit cu, CallableDeclaration<?> node) {
         String sig = "";
         if (node instanceof MethodDeclaration) {
             MethodDeclaration methodNode = (MethodDeclaration) node;
             if (methodNode.getBody().isPresent()) {
-                sig = getSourceCodeByPosition(getTokenString(cu),
-                        methodNode.getBegin().orElseThrow(), methodNode.getBody().get().getBegin().orElseThrow());
+                sig = source.slice(methodNode.getBegin().orElseThrow(), methodNode.getBody().get().getBegin().orElseThrow());
                 sig = sig.substring(0, sig.lastIndexOf("{") - 1) + "{}";
             } else {
-                sig = getSourceCodeByPosition(getTokenString(cu),
-                        methodNode.getBegin().orElseThrow(), methodNode.getEnd().orElseThrow());
+                sig = source.slice(methodNode.getBegin().orElseThrow(), methodNode.getEnd().orElseThrow());
             }
         } else if (node instanceof ConstructorDeclaration) {
             ConstructorDeclaration constructorNode = (ConstructorDeclaration) node.removeComment();
-            sig = getSourceCodeByPosition(getTokenString(cu),
-                    constructorNode.getBegin().orElseThrow(), constructorNode.getBody().getBegin().orElseThrow());
+            sig = source.slice(constructorNode.getBegin().orElseThrow(), constructorNode.getBody().getBegin().orElseThrow());
             sig = sig.substring(0, sig.lastIndexOf("{") - 1) + "{}";
         }
         return sig;
@@ -309,14 +435,14 @@ public class ClassParser {
      * Get class signature
      */
     public static String getClassSignature(CompilationUnit cu, ClassOrInterfaceDeclaration node) {
-        return getSourceCodeByPosition(getTokenString(cu), node.getBegin().orElseThrow(), node.getName().getEnd().orElseThrow());
+        return SourceView.of(cu).slice(node.getBegin().orElseThrow(), node.getName().getEnd().orElseThrow());
     }
 
     /**
      * Get method(constructor) source code start from the first modifier to the end of the node.
      */
-    private String getMethodCode(CompilationUnit cu, CallableDeclaration node) {
-        return node.getTokenRange().orElseThrow().toString();
+    private String getMethodCode(CompilationUnit cu, CallableDeclaration<?> node) {
+        return source.slice(node);
     }
 
     /**
@@ -334,20 +460,20 @@ public class ClassParser {
      * Get field source code start from the first modifier to the end of the node
      */
     private String getFieldCode(CompilationUnit cu, FieldDeclaration node) {
-        return node.getTokenRange().orElseThrow().toString();
+        return source.slice(node);
     }
 
     /**
      * Whether the method uses a field
      */
-    private boolean useField(CallableDeclaration node) {
+    private boolean useField(CallableDeclaration<?> node) {
         return node.findAll(FieldAccessExpr.class).size() > 0;
     }
 
     /**
      * Whether the method is a getter or setter (assume the getter and setter access the field by "this")
      */
-    private boolean isGetSet(CallableDeclaration node) {
+    private boolean isGetSet(CallableDeclaration<?> node) {
         if (node.isConstructorDeclaration()) {
             return false;
         }
@@ -369,7 +495,7 @@ public class ClassParser {
         return false;
     }
 
-    private boolean isGetSet2(CallableDeclaration node) {
+    private boolean isGetSet2(CallableDeclaration<?> node) {
         if (node.isConstructorDeclaration()) {
             return false;
         }
@@ -382,11 +508,11 @@ public class ClassParser {
         return false;
     }
 
-    private boolean isPublic(CallableDeclaration node) {
+    private boolean isPublic(CallableDeclaration<?> node) {
         return node.isPublic();
     }
 
-    private boolean isBoolean(CallableDeclaration node) {
+    private boolean isBoolean(CallableDeclaration<?> node) {
         if (node.isConstructorDeclaration()) {
             return false;
         }
@@ -401,15 +527,71 @@ public class ClassParser {
     /**
      * Get method parameters
      */
-    private List<String> getParameters(CallableDeclaration node) {
+    private List<String> getParameters(CallableDeclaration<?> node) {
         List<String> parameters = new ArrayList<>();
         node.getParameters().forEach(p -> {
-            parameters.add(((Parameter) p).getType().asString());
+            parameters.add(p.getType().asString());
         });
         return parameters;
     }
 
-    private Map<String, Set<String>> getDependentMethods(CompilationUnit cu, CallableDeclaration node) {
+    /**
+     * Whether a method calls other methods or takes non primitive parameters, otherwise it has no dependencies
+     * and nothing to resolve.
+     */
+    private boolean needsResolution(CallableDeclaration<?> node) {
+        if (!node.findAll(MethodCallExpr.class).isEmpty()) {
+            return true;
+        }
+        for (Parameter p : node.getParameters()) {
+            if (!p.getType().isPrimitiveType()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Full names of the types a file refers to, guessed from its imports and package without symbol resolution.
+     * Types from wildcard imports are missed.
+     */
+    private static Set<String> getReferencedTypes(CompilationUnit cu) {
+        String packageName = cu.getPackageDeclaration().map(p -> p.getNameAsString() + ".").orElse("");
+        Map<String, String> imported = new HashMap<>();
+        Set<String> types = new TreeSet<>();
+        for (ImportDeclaration i : cu.getImports()) {
+            if (i.isAsterisk()) {
+                continue;
+            }
+            String name = i.getNameAsString();
+            if (i.isStatic()) {
+                name = name.substring(0, name.lastIndexOf("."));
+            }
+            imported.put(name.substring(name.lastIndexOf(".") + 1), name);
+            types.add(name);
+        }
+        Set<String> names = new HashSet<>();
+        for (ClassOrInterfaceType t : cu.findAll(ClassOrInterfaceType.class)) {
+            if (t.getScope().isPresent()) {
+                types.add(t.getNameWithScope());
+            } else {
+                names.add(t.getNameAsString());
+            }
+        }
+        // static calls on classes of the same package, e.g. Utils.format(...)
+        for (MethodCallExpr m : cu.findAll(MethodCallExpr.class)) {
+            m.getScope().filter(scope -> scope instanceof NameExpr)
+                    .map(scope -> ((NameExpr) scope).getNameAsString())
+                    .filter(name -> Character.isUpperCase(name.charAt(0)))
+                    .ifPresent(names::add);
+        }
+        for (String name : names) {
+            types.add(imported.getOrDefault(name, packageName + name));
+        }
+        return types;
+    }
+
+    private Map<String, Set<String>> getDependentMethods(CompilationUnit cu, CallableDeclaration<?> node) {
         Map<String, Set<String>> dependentMethods = new LinkedHashMap<>();
         List<MethodCallExpr> methodCalls = node.findAll(MethodCallExpr.class);
         List<Parameter> pars = node.getParameters();
@@ -436,23 +618,48 @@ public class ClassParser {
             }
         }
         for (MethodCallExpr m : methodCalls) {
-            try {
-                ResolvedMethodDeclaration md = m.resolve();
-                String dependentType = md.declaringType().getQualifiedName();
-                String mSig = getParamTypeInSig(md); // change parameters' type to non-qualified name
-                Set<String> invocations = dependentMethods.get(dependentType);
-                if (invocations == null) {
-                    invocations = new HashSet<>();
-                }
-                invocations.add(mSig);
-                dependentMethods.put(dependentType, invocations);
-            } catch (Exception e) {
+            String[] resolved = resolve(m);
+            if (resolved == UNRESOLVED) {
 //                config.getLog().warn("Cannot resolve method call: " + m.getNameAsString() + " in: " + node.getNameAsString());
+                continue;
             }
+            String dependentType = resolved[0];
+            String mSig = resolved[1];
+            Set<String> invocations = dependentMethods.get(dependentType);
+            if (invocations == null) {
+                invocations = new HashSet<>();
+            }
+            invocations.add(mSig);
+            dependentMethods.put(dependentType, invocations);
         }
         return dependentMethods;
     }
 
+    /**
+     * Resolve a method call to its declaring type and signature, cached for the current parse.
+     */
+    private String[] resolve(MethodCallExpr m) {
+        if (sourcePath == null || !m.getRange().isPresent()) {
+            return resolveCall(m);
+        }
+        // chained calls share their begin position, the range tells them apart
+        return resolutionCache.computeIfAbsent(sourcePath + "@" + m.getRange().get(), k -> resolveCall(m));
+    }
+
+    private static String[] resolveCall(MethodCallExpr m) {
+        try {
+            ResolvedMethodDeclaration md = m.resolve();
+            // change parameters' type to non-qualified name
+            return new String[]{md.declaringType().getQualifiedName(), getParamTypeInSig(md)};
+        } catch (Exception e) {
+            return UNRESOLVED;
+        }
+    }
+
+    public static void clearResolutionCache() {
+        resolutionCache.clear();
+    }
+
     private static String getParamTypeInSig(ResolvedMethodDeclaration md) {
         String sig = md.getName() + "(";
         for (int i = 0; i < md.getNumberOfParams(); i++) {
@@ -474,44 +681,12 @@ public class ClassParser {
         return type.substring(type.lastIndexOf(".") + 1);
     }
 
-    private static String getSourceCodeByPosition(String code, Position begin, Position end) {
-        String[] lines = code.split("\\n");
-        StringBuilder sb = new StringBuilder();
-
-        for (int i = begin.line - 1; i < end.line; i++) {
-            if (i == begin.line - 1 && i == end.line - 1) {
-                // The range is within a single line
-                sb.append(lines[i].substring(begin.column - 1, end.column));
-            } else if (i == begin.line - 1) {
-                // The first line of the range
-                sb.append(lines[i].substring(begin.column - 1));
-            } else if (i == end.line - 1) {
-                // The last line of the range
-                sb.append(lines[i].substring(0, end.column));
-            } else {
-                // A middle line in the range
-                sb.append(lines[i]);
-            }
-
-            // Add line breaks except for the last line
-            if (i < end.line - 1) {
-                sb.append(System.lineSeparator());
-            }
-        }
-
-        return sb.toString();
-    }
-
-    private static String getTokenString(@NotNull Node node) {
-        if (node.getTokenRange().isPresent()) {
-            return node.getTokenRange().get().toString();
-        } else {
-            return "";
+    private void exportClassInfo(ClassInfo classInfo) throws IOException {
+        store.putClass(classInfo);
+        if (!config.isEnableJsonExport()) {
+            return;
         }
-    }
-
-    private void exportClassInfo(ClassInfo classInfo, ClassOrInterfaceDeclaration classNode) throws IOException {
-        Path classOutputDir = classOutputPath.resolve(classNode.getName().getIdentifier());
+        Path classOutputDir = classOutputPath.resolve(classInfo.className);
         if (!Files.exists(classOutputDir)) {
             Files.createDirectories(classOutputDir);
         }
@@ -522,24 +697,16 @@ public class ClassParser {
         }
     }
 
-    private void exportMethodInfo(MethodInfo methodInfo, ClassOrInterfaceDeclaration classNode, MethodDeclaration node) throws IOException {
-        Path classOutputDir = classOutputPath.resolve(classNode.getName().getIdentifier());
-        if (!Files.exists(classOutputDir)) {
-            Files.createDirectories(classOutputDir);
+    private void exportMethodInfo(MethodInfo methodInfo) throws IOException {
+        store.putMethod(classInfo.fullClassName, methodInfo);
+        if (!config.isEnableJsonExport()) {
+            return;
         }
-        Path info = classOutputDir.resolve(getFilePathBySig(node.getSignature().asString()));
-        //set charset utf-8
-        try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(info.toFile()),StandardCharsets.UTF_8)){
-            writer.write(config.getGSON().toJson(methodInfo));
-        }
-    }
-
-    private void exportConstructorInfo(MethodInfo methodInfo, ClassOrInterfaceDeclaration classNode, ConstructorDeclaration node) throws IOException {
-        Path classOutputDir = classOutputPath.resolve(classNode.getName().getIdentifier());
+        Path classOutputDir = classOutputPath.resolve(classInfo.className);
         if (!Files.exists(classOutputDir)) {
             Files.createDirectories(classOutputDir);
         }
-        Path info = classOutputDir.resolve(getFilePathBySig(node.getSignature().asString()));
+        Path info = classOutputDir.resolve(getFilePathBySig(methodInfo.methodSignature));
         //set charset utf-8
         try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(info.toFile()),StandardCharsets.UTF_8)){
             writer.write(config.getGSON().toJson(methodInfo));
@@ -579,9 +746,11 @@ public class ClassParser {
         map.put("modifier", classInfo.modifier);
         map.put("extend", classInfo.extend);
         map.put("implement", classInfo.implement);
-        if (config.classMapping == null) {
-            config.classMapping = new LinkedHashMap<>();
+        synchronized (Config.class) {
+            if (Config.classMapping == null) {
+                Config.classMapping = new LinkedHashMap<>();
+            }
+            Config.classMapping.put("class" + classInfo.index, map);
         }
-        config.classMapping.put("class" + classInfo.index, map);
     }
 }
@@ -0,0 +1,163 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Second phase of a lazy parse: resolves the dependencies of a class or method the first time they are needed.
+ * <p>
+ * The syntactic pass marks the classes and methods whose dependencies it skipped as unresolved. Resolving one
+ * parses its source file again with a symbol solver and writes the completed record back to the {@link ParseStore},
+ * so each class or method is resolved once, in this run and the following ones, and only if a test is actually
+ * generated for it or for a method depending on it.
+ * <p>
+ * Resolvers are pooled per parse output. Each keeps its own parser and the last few parsed files, since the methods
+ * of a class are usually resolved one after the other; a resolver is used by a single thread at a time.
+ */
+public class LazyResolver {
+    private static final int PARSED_FILES = 8;
+    private static final Map<Path, Queue<LazyResolver>> POOLS = new ConcurrentHashMap<>();
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final ClassParser classParser;
+    private final JavaParser parser;
+    private final Map<String, CompilationUnit> parsedFiles = new LinkedHashMap<String, CompilationUnit>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompilationUnit> eldest) {
+            return size() > PARSED_FILES;
+        }
+    };
+
+    private LazyResolver(Config config) {
+        this.parser = ProjectParser.newParser(config);
+        this.classParser = new ClassParser(config, null, parser);
+    }
+
+    /**
+     * Resolve the constructor dependencies of a class.
+     *
+     * @return the resolved class info, the given one if there is nothing to resolve
+     */
+    public static ClassInfo resolve(Config config, ClassInfo classInfo) {
+        if (!classInfo.unresolved) {
+            return classInfo;
+        }
+        ParseStore store = ParseStore.open(config.getParseOutput());
+        synchronized (lock(config, classInfo.fullClassName)) {
+            ClassInfo stored = store.getClassInfo(classInfo.fullClassName);
+            if (stored == null || !stored.unresolved) {
+                return stored == null ? classInfo : stored;
+            }
+            LazyResolver resolver = borrow(config);
+            try {
+                ClassOrInterfaceDeclaration classNode = resolver.findClass(stored);
+                stored.setConstructorDeps(classNode == null ? new LinkedHashMap<>()
+                        : resolver.classParser.resolveConstructorDeps(stored.sourcePath, classNode.findCompilationUnit().orElseThrow(), classNode));
+            } finally {
+                release(config, resolver);
+            }
+            stored.setUnresolved(false);
+            store.putClass(stored);
+            return stored;
+        }
+    }
+
+    /**
+     * Resolve the dependent methods of a method (constructor).
+     *
+     * @return the resolved method info, the given one if there is nothing to resolve
+     */
+    public static MethodInfo resolve(Config config, ClassInfo classInfo, MethodInfo methodInfo) {
+        if (!methodInfo.unresolved) {
+            return methodInfo;
+        }
+        ParseStore store = ParseStore.open(config.getParseOutput());
+        String key = ParseStore.methodKey(classInfo.fullClassName, methodInfo.methodSignature);
+        synchronized (lock(config, key)) {
+            MethodInfo stored = store.getMethodInfo(classInfo.fullClassName, methodInfo.methodSignature);
+            if (stored == null || !stored.unresolved) {
+                return stored == null ? methodInfo : stored;
+            }
+            LazyResolver resolver = borrow(config);
+            try {
+                CallableDeclaration<?> node = resolver.findCallable(classInfo, methodInfo.methodSignature);
+                stored.setDependentMethods(node == null ? new LinkedHashMap<>()
+                        : resolver.classParser.resolveDependentMethods(classInfo.sourcePath, node.findCompilationUnit().orElseThrow(), node));
+            } finally {
+                release(config, resolver);
+            }
+            stored.setUnresolved(false);
+            store.putMethod(classInfo.fullClassName, stored);
+            return stored;
+        }
+    }
+
+    private static Object lock(Config config, String key) {
+        return LOCKS.computeIfAbsent(config.getParseOutput() + "|" + key, k -> new Object());
+    }
+
+    private static LazyResolver borrow(Config config) {
+        LazyResolver resolver = POOLS.computeIfAbsent(config.getParseOutput(), k -> new ConcurrentLinkedQueue<>()).poll();
+        return resolver != null ? resolver : new LazyResolver(config);
+    }
+
+    private static void release(Config config, LazyResolver resolver) {
+        POOLS.get(config.getParseOutput()).offer(resolver);
+    }
+
+    private ClassOrInterfaceDeclaration findClass(ClassInfo classInfo) {
+        CompilationUnit cu = parse(classInfo.sourcePath);
+        if (cu == null) {
+            return null;
+        }
+        return cu.findAll(ClassOrInterfaceDeclaration.class).stream()
+                .filter(c -> c.getNameAsString().equals(classInfo.className))
+                .findFirst().orElse(null);
+    }
+
+    private CallableDeclaration<?> findCallable(ClassInfo classInfo, String methodSignature) {
+        ClassOrInterfaceDeclaration classNode = findClass(classInfo);
+        if (classNode == null) {
+            return null;
+        }
+        List<CallableDeclaration<?>> callables = new ArrayList<>(classNode.getMethods());
+        callables.addAll(classNode.getConstructors());
+        for (CallableDeclaration<?> callable : callables) {
+            if (callable.getSignature().asString().equals(methodSignature)) {
+                return callable;
+            }
+        }
+        return null;
+    }
+
+    private CompilationUnit parse(String sourcePath) {
+        if (sourcePath == null) {
+            return null;
+        }
+        CompilationUnit cu = parsedFiles.get(sourcePath);
+        if (cu != null) {
+            return cu;
+        }
+        try {
+            cu = parser.parse(new File(sourcePath)).getResult().orElse(null);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        if (cu != null) {
+            parsedFiles.put(sourcePath, cu);
+        }
+        return cu;
+    }
+}
@@ -0,0 +1,130 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Source files seen by the last parse, used to reparse only what changed.
+ * <p>
+ * Each file is recorded with its modification time, size and content hash, the classes it declares and the
+ * classes they depend on. A file is considered changed when its time or size differs and its hash does too,
+ * so touching a file without editing it does not trigger a reparse.
+ */
+@Data
+public class ParseManifest {
+    public static final String MANIFEST_FILE = "parse.manifest.json";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    @Data
+    public static class Entry {
+        private String hash;
+        private long mtime;
+        private long size;
+        private List<String> classes = new ArrayList<>();
+        private Set<String> dependencies = new TreeSet<>();
+    }
+
+    /**
+     * Index given to the next new class.
+     */
+    private int nextIndex;
+    private Map<String, Entry> files = new TreeMap<>();
+
+    /**
+     * Load the manifest of a parse output.
+     *
+     * @return the manifest, or null if there is none or it cannot be read
+     */
+    public static ParseManifest load(Path parseOutput) {
+        Path path = parseOutput.resolve(MANIFEST_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            return GSON.fromJson(Files.readString(path, StandardCharsets.UTF_8), ParseManifest.class);
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    public void save(Path parseOutput) {
+        try {
+            Files.createDirectories(parseOutput);
+            Files.writeString(parseOutput.resolve(MANIFEST_FILE), GSON.toJson(this), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseManifest.save: " + e);
+        }
+    }
+
+    public static void delete(Path parseOutput) {
+        try {
+            Files.deleteIfExists(parseOutput.resolve(MANIFEST_FILE));
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseManifest.delete: " + e);
+        }
+    }
+
+    /**
+     * Whether the file was added or its content changed since the manifest was written.
+     * A file whose time or size changed but whose content did not gets its entry refreshed.
+     */
+    public boolean isChanged(String file) throws IOException {
+        Entry entry = files.get(file);
+        if (entry == null) {
+            return true;
+        }
+        Path path = Path.of(file);
+        long mtime = Files.getLastModifiedTime(path).toMillis();
+        long size = Files.size(path);
+        if (entry.mtime == mtime && entry.size == size) {
+            return false;
+        }
+        if (!hash(path).equals(entry.hash)) {
+            return true;
+        }
+        entry.mtime = mtime;
+        entry.size = size;
+        return false;
+    }
+
+    /**
+     * Record the current state of a parsed file.
+     */
+    public void put(String file, List<String> classes, Set<String> dependencies) throws IOException {
+        Path path = Path.of(file);
+        Entry entry = new Entry();
+        entry.hash = hash(path);
+        entry.mtime = Files.getLastModifiedTime(path).toMillis();
+        entry.size = Files.size(path);
+        entry.classes = new ArrayList<>(classes);
+        entry.dependencies = new TreeSet<>(dependencies);
+        files.put(file, entry);
+    }
+
+    public Entry remove(String file) {
+        return files.remove(file);
+    }
+
+    private static String hash(Path path) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(path));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("In ParseManifest.hash: " + e);
+        }
+    }
+}
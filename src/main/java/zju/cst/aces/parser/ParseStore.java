@@ -0,0 +1,665 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+import zju.cst.aces.util.StringPool;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Single-file store of the parsed class and method information.
+ * <p>
+ * The data file is append-only, each record is {@code [kind:byte][keyLength:int][key][payloadLength:int][payload]}
+ * where the payload is compact UTF-8 JSON. Classes are keyed by full class name and methods by
+ * {@code fullClassName#methodSignature}; a later record for the same key replaces the earlier one and a
+ * {@code REMOVED} record deletes it. {@code CODE} records hold the code of classes as plain text. The offset index is kept in memory, persisted next to the data file on
+ * {@link #flush()} and rebuilt by scanning the record headers if it is missing or stale. Reads go through a
+ * read-only memory mapping of the data file; records appended after the mapping are read positionally, and the file
+ * is mapped again once it has doubled. Replaced and removed records stay in the file until {@link #compact()}.
+ * <p>
+ * Only one process writes the data file: the first write takes an exclusive lock on {@code parse.lock}. A store that
+ * cannot get the lock, or that is set {@link #setReadOnly(boolean) read-only}, keeps the records put into it in
+ * memory, so processes sharing the parse output, like shard workers, never write at a stale offset.
+ * <p>
+ * Appends only add offsets, so reads run alongside them. Compaction and clearing move or drop records and exclude
+ * reads while they run; they take that exclusion before the store monitor, and reads never take it while holding
+ * the monitor.
+ */
+public class ParseStore {
+    public static final String STORE_FILE = "parse.store";
+    public static final String INDEX_FILE = "parse.index";
+    public static final String LOCK_FILE = "parse.lock";
+    private static final int INDEX_MAGIC = 0x43555432;
+    private static final byte CLASS = 1;
+    private static final byte METHOD = 2;
+    private static final byte REMOVED = 3;
+    private static final byte CODE = 4;
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Map<Path, ParseStore> STORES = new ConcurrentHashMap<>();
+
+    private final Path storePath;
+    private final Path indexPath;
+    private final Path lockPath;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    /**
+     * Records put while read-only, they take precedence over the data file
+     */
+    private final Map<String, String> unsaved = new ConcurrentHashMap<>();
+    private volatile boolean readOnly = false;
+    /**
+     * Read side held by lookups, write side by whatever moves records or rebuilds the index
+     */
+    private final ReadWriteLock relocation = new ReentrantReadWriteLock();
+    private FileChannel lockChannel;
+    private volatile FileLock lock;
+    private FileChannel channel;
+    private boolean writable;
+    private volatile MappedByteBuffer mapped;
+    private long size;
+    private long garbage;
+
+    private ParseStore(Path dir) {
+        this.storePath = dir.resolve(STORE_FILE);
+        this.indexPath = dir.resolve(INDEX_FILE);
+        this.lockPath = dir.resolve(LOCK_FILE);
+    }
+
+    /**
+     * Get the shared store under the parse output directory.
+     */
+    public static ParseStore open(Path parseOutput) {
+        return STORES.computeIfAbsent(parseOutput.toAbsolutePath().normalize(), dir -> {
+            ParseStore store = new ParseStore(dir);
+            store.load();
+            return store;
+        });
+    }
+
+    /**
+     * Close the shared store under the parse output directory and release its write lock, the next {@link #open}
+     * reads the files again.
+     */
+    static void close(Path parseOutput) {
+        ParseStore store = STORES.remove(parseOutput.toAbsolutePath().normalize());
+        if (store == null) {
+            return;
+        }
+        synchronized (store) {
+            try {
+                store.closeChannel();
+                if (store.lockChannel != null) {
+                    store.lockChannel.close();
+                    store.lockChannel = null;
+                    store.lock = null;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("In ParseStore.close: " + e);
+            }
+        }
+    }
+
+    /**
+     * Whether a store has been written under the parse output directory.
+     */
+    public static boolean exists(Path parseOutput) {
+        return Files.exists(parseOutput.resolve(STORE_FILE));
+    }
+
+    /**
+     * Keep the records put from now on in memory instead of appending them to the data file.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public static String methodKey(String fullClassName, String methodSignature) {
+        return fullClassName + "#" + methodSignature;
+    }
+
+    /**
+     * Drop all records, used before a full parse.
+     */
+    public void clear() {
+        relocation.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (readOnly || !lock()) {
+                    unsaved.clear();
+                    index.clear();
+                    return;
+                }
+                closeChannel();
+                Files.deleteIfExists(storePath);
+                Files.deleteIfExists(indexPath);
+                index.clear();
+                size = 0;
+                garbage = 0;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseStore.clear: " + e);
+        } finally {
+            relocation.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Store a class. Its file and class declaration code go to separate code records referenced by key, written
+     * once per key, so the classes of a file share the file code and loading a class does not load any code.
+     */
+    public void putClass(ClassInfo classInfo) {
+        JsonObject json = GSON.toJsonTree(classInfo).getAsJsonObject();
+        if (classInfo.compilationUnitCode != null && classInfo.compilationUnitCodeKey != null) {
+            putCode(classInfo.compilationUnitCodeKey, classInfo.compilationUnitCode);
+            json.remove("compilationUnitCode");
+        }
+        if (classInfo.classDeclarationCode != null && classInfo.classDeclarationCodeKey != null) {
+            putCode(classInfo.classDeclarationCodeKey, classInfo.classDeclarationCode);
+            json.remove("classDeclarationCode");
+        }
+        append(CLASS, classInfo.getFullClassName(), GSON.toJson(json));
+    }
+
+    public void putMethod(String fullClassName, MethodInfo methodInfo) {
+        append(METHOD, methodKey(fullClassName, methodInfo.getMethodSignature()), GSON.toJson(methodInfo));
+    }
+
+    /**
+     * Store a code blob unless its key is already stored. Code keys start with the key of their class and a
+     * {@code #}, so they are deleted together with the class.
+     */
+    public void putCode(String key, String code) {
+        if (!index.containsKey(key) && !unsaved.containsKey(key)) {
+            append(CODE, key, code);
+        }
+    }
+
+    public String getCode(String key) {
+        return key == null ? null : read(key);
+    }
+
+    /**
+     * Key of the code of a class declaration.
+     */
+    public static String classCodeKey(String fullClassName) {
+        return fullClassName + "#<class>";
+    }
+
+    /**
+     * Key of the code of a source file, stored under the first class it declares.
+     */
+    public static String fileCodeKey(String fullClassName) {
+        return fullClassName + "#<file>";
+    }
+
+    /**
+     * Delete a class, its methods and its code.
+     */
+    public void removeClass(String fullClassName) {
+        String prefix = methodKey(fullClassName, "");
+        Set<String> keys = new HashSet<>(index.keySet());
+        keys.addAll(unsaved.keySet());
+        for (String key : keys) {
+            if (key.startsWith(prefix)) {
+                append(REMOVED, key, "");
+            }
+        }
+        if (index.containsKey(fullClassName) || unsaved.containsKey(fullClassName)) {
+            append(REMOVED, fullClassName, "");
+        }
+    }
+
+    public ClassInfo getClassInfo(String fullClassName) {
+        String json = read(fullClassName);
+        if (json == null) {
+            return null;
+        }
+        ClassInfo classInfo = GSON.fromJson(json, ClassInfo.class);
+        classInfo.setCodeStore(this);
+        return intern(classInfo);
+    }
+
+    public MethodInfo getMethodInfo(String fullClassName, String methodSignature) {
+        String json = read(methodKey(fullClassName, methodSignature));
+        return json == null ? null : intern(GSON.fromJson(json, MethodInfo.class));
+    }
+
+    private static ClassInfo intern(ClassInfo classInfo) {
+        StringPool pool = StringPool.shared();
+        classInfo.className = pool.intern(classInfo.className);
+        classInfo.fullClassName = pool.intern(classInfo.fullClassName);
+        classInfo.modifier = pool.intern(classInfo.modifier);
+        classInfo.extend = pool.intern(classInfo.extend);
+        classInfo.implement = pool.intern(classInfo.implement);
+        classInfo.packageName = pool.intern(classInfo.packageName);
+        classInfo.packageDeclaration = pool.intern(classInfo.packageDeclaration);
+        classInfo.sourcePath = pool.intern(classInfo.sourcePath);
+        classInfo.compilationUnitCodeKey = pool.intern(classInfo.compilationUnitCodeKey);
+        classInfo.imports = pool.intern(classInfo.imports);
+        classInfo.superClasses = pool.intern(classInfo.superClasses);
+        classInfo.implementedTypes = pool.intern(classInfo.implementedTypes);
+        classInfo.constructorDeps = pool.intern(classInfo.constructorDeps);
+        return classInfo;
+    }
+
+    private static MethodInfo intern(MethodInfo methodInfo) {
+        StringPool pool = StringPool.shared();
+        methodInfo.className = pool.intern(methodInfo.className);
+        methodInfo.methodSignature = pool.intern(methodInfo.methodSignature);
+        methodInfo.parameters = pool.intern(methodInfo.parameters);
+        methodInfo.dependentMethods = pool.intern(methodInfo.dependentMethods);
+        return methodInfo;
+    }
+
+    /**
+     * Full names of all classes in the store.
+     */
+    public Set<String> getClassNames() {
+        Set<String> names = new TreeSet<>();
+        relocation.readLock().lock();
+        try {
+            for (String key : index.keySet()) {
+                if (!key.contains("#")) {
+                    names.add(key);
+                }
+            }
+        } finally {
+            relocation.readLock().unlock();
+        }
+        for (String key : unsaved.keySet()) {
+            if (!key.contains("#")) {
+                names.add(key);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Force the data file to disk and persist the offset index.
+     */
+    public synchronized void flush() {
+        if (channel == null || lock == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            Path tmp = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeLong(size);
+                out.writeLong(garbage);
+                out.writeInt(index.size());
+                for (Map.Entry<String, Long> entry : index.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(tmp, indexPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseStore.flush: " + e);
+        }
+    }
+
+    /**
+     * Export the store as the per-class {@code class.json} and per-method {@code <id>.json} layout, for tooling.
+     */
+    public void exportJson(Path outputDir, Gson gson) throws IOException {
+        for (String fullClassName : getClassNames()) {
+            ClassInfo classInfo = getClassInfo(fullClassName);
+            classInfo.setCode(classInfo.getCompilationUnitCode(), classInfo.getClassDeclarationCode());
+            Path classDir = outputDir.resolve(fullClassName.replace(".", File.separator));
+            Files.createDirectories(classDir);
+            Files.writeString(classDir.resolve("class.json"), gson.toJson(classInfo), StandardCharsets.UTF_8);
+            for (String sig : classInfo.methodSigs.keySet()) {
+                MethodInfo methodInfo = getMethodInfo(fullClassName, sig);
+                if (methodInfo != null) {
+                    Files.writeString(classDir.resolve(ClassParser.getFilePathBySig(sig, classInfo)),
+                            gson.toJson(methodInfo), StandardCharsets.UTF_8);
+                }
+            }
+        }
+    }
+
+    private void append(byte kind, String key, String payload) {
+        try {
+            if (!readOnly && lock == null) {
+                lockForWrite();
+            }
+            synchronized (this) {
+                if (readOnly || lock == null) {
+                    if (kind == REMOVED) {
+                        unsaved.remove(key);
+                        index.remove(key);
+                    } else {
+                        unsaved.put(key, payload);
+                    }
+                    return;
+                }
+                FileChannel ch = channel();
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + keyBytes.length + 4 + payloadBytes.length);
+                buffer.put(kind).putInt(keyBytes.length).put(keyBytes).putInt(payloadBytes.length).put(payloadBytes);
+                buffer.flip();
+                long offset = size;
+                while (buffer.hasRemaining()) {
+                    ch.write(buffer, size + buffer.position());
+                }
+                size += buffer.limit();
+                Long replaced = index.get(key);
+                if (replaced != null) {
+                    garbage += recordLength(replaced);
+                }
+                if (kind == REMOVED) {
+                    garbage += buffer.limit();
+                    index.remove(key);
+                } else {
+                    index.put(key, offset);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseStore.append: " + e);
+        }
+    }
+
+    /**
+     * Share of the data file taken by replaced and removed records.
+     */
+    public synchronized double getGarbageRatio() {
+        return size == 0 ? 0 : (double) garbage / size;
+    }
+
+    /**
+     * Rewrite the data file with only the live records, in their current order.
+     */
+    public void compact() {
+        relocation.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (garbage == 0 || lock == null) {
+                    return;
+                }
+                List<Map.Entry<String, Long>> live = new ArrayList<>(index.entrySet());
+                live.sort(Map.Entry.comparingByValue());
+                Path tmp = storePath.resolveSibling(STORE_FILE + ".tmp");
+                Map<String, Long> compacted = new HashMap<>();
+                long offset = 0;
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    for (Map.Entry<String, Long> entry : live) {
+                        int length = recordLength(entry.getValue());
+                        ByteBuffer record = slice(entry.getValue(), length);
+                        while (record.hasRemaining()) {
+                            out.write(record, offset + record.position());
+                        }
+                        compacted.put(entry.getKey(), offset);
+                        offset += length;
+                    }
+                    out.force(false);
+                }
+                closeChannel();
+                Files.move(tmp, storePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                index.clear();
+                index.putAll(compacted);
+                size = offset;
+                garbage = 0;
+                channel();
+                flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseStore.compact: " + e);
+        } finally {
+            relocation.writeLock().unlock();
+        }
+    }
+
+    private int recordLength(long offset) {
+        int keyLength = slice(offset, 5).getInt(1);
+        int payloadLength = slice(offset + 5 + keyLength, 4).getInt(0);
+        return 5 + keyLength + 4 + payloadLength;
+    }
+
+    private String read(String key) {
+        String kept = unsaved.get(key);
+        if (kept != null) {
+            return kept;
+        }
+        relocation.readLock().lock();
+        try {
+            Long offset = index.get(key);
+            if (offset == null) {
+                return null;
+            }
+            ByteBuffer header = slice(offset, 5);
+            int keyLength = header.getInt(1);
+            ByteBuffer lengthBuffer = slice(offset + 5 + keyLength, 4);
+            int payloadLength = lengthBuffer.getInt(0);
+            ByteBuffer payload = slice(offset + 5 + keyLength + 4, payloadLength);
+            byte[] bytes = new byte[payloadLength];
+            payload.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } finally {
+            relocation.readLock().unlock();
+        }
+    }
+
+    /**
+     * A buffer positioned at {@code offset}, served from the memory mapping when it covers the range.
+     */
+    private ByteBuffer slice(long offset, int length) {
+        MappedByteBuffer m = mapped;
+        if (m == null || offset + length > m.capacity()) {
+            m = remap();
+        }
+        if (m != null && offset + length <= m.capacity()) {
+            ByteBuffer view = m.duplicate();
+            view.position((int) offset);
+            view.limit((int) offset + length);
+            return view.slice();
+        }
+        // appended after the mapping, or beyond what a single mapping can address
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel().read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseStore.slice: " + e);
+        }
+    }
+
+    /**
+     * Map the data file again once it has grown to twice the mapped size, so a growing file is mapped a
+     * logarithmic number of times.
+     */
+    private synchronized MappedByteBuffer remap() {
+        if (size == 0 || size > Integer.MAX_VALUE) {
+            return mapped;
+        }
+        if (mapped == null || size >= 2L * mapped.capacity()) {
+            try {
+                mapped = channel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                throw new RuntimeException("In ParseStore.remap: " + e);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Take the write lock of the data file for an append, excluding reads since it may rebuild the index.
+     */
+    private void lockForWrite() throws IOException {
+        relocation.writeLock().lock();
+        try {
+            synchronized (this) {
+                lock();
+            }
+        } finally {
+            relocation.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Take the write lock of the data file, or switch to read-only if another process holds it.
+     *
+     * @return whether this process may write the data file
+     */
+    private boolean lock() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+        Files.createDirectories(lockPath.getParent());
+        lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            readOnly = true;
+            return false;
+        }
+        // records the previous owner appended since the load, and a torn tail only the owner may drop
+        long fileSize = Files.exists(storePath) ? Files.size(storePath) : 0;
+        if (fileSize < size) {
+            // cleared or compacted by the previous owner
+            index.clear();
+            size = 0;
+            garbage = 0;
+        }
+        if (fileSize != size) {
+            scan(size);
+        }
+        return true;
+    }
+
+    /**
+     * The data file channel, writable only while this process holds the write lock.
+     */
+    private synchronized FileChannel channel() throws IOException {
+        if (channel != null && lock != null && !writable) {
+            closeChannel();
+        }
+        if (channel == null) {
+            if (lock != null) {
+                Files.createDirectories(storePath.getParent());
+                channel = FileChannel.open(storePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                channel = FileChannel.open(storePath, StandardOpenOption.READ);
+            }
+            writable = lock != null;
+        }
+        return channel;
+    }
+
+    private void closeChannel() throws IOException {
+        mapped = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private synchronized void load() {
+        index.clear();
+        size = 0;
+        garbage = 0;
+        if (!Files.exists(storePath)) {
+            return;
+        }
+        try {
+            size = Files.size(storePath);
+            if (loadIndex()) {
+                return;
+            }
+            index.clear();
+            size = 0;
+            scan(0);
+        } catch (IOException e) {
+            throw new RuntimeException("In ParseStore.load: " + e);
+        }
+    }
+
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readLong() != size) {
+                return false;
+            }
+            garbage = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                index.put(in.readUTF(), in.readLong());
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replay the records from {@code offset} by reading only their headers. A torn trailing record ends the scan,
+     * and is truncated when this process holds the write lock.
+     */
+    private void scan(long offset) throws IOException {
+        FileChannel ch = channel();
+        long end = ch.size();
+        ByteBuffer header = ByteBuffer.allocate(5);
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (offset + 5 <= end) {
+            header.clear();
+            ch.read(header, offset);
+            byte kind = header.get(0);
+            int keyLength = header.getInt(1);
+            if (keyLength < 0 || offset + 5 + keyLength + 4 > end) {
+                break;
+            }
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            ch.read(key, offset + 5);
+            length.clear();
+            ch.read(length, offset + 5 + keyLength);
+            long next = offset + 5 + keyLength + 4 + length.getInt(0);
+            if (next < offset + 5 + keyLength + 4 || next > end) {
+                break;
+            }
+            String k = new String(key.array(), StandardCharsets.UTF_8);
+            Long replaced = index.get(k);
+            if (replaced != null) {
+                garbage += recordLength(replaced);
+            }
+            if (kind == REMOVED) {
+                index.remove(k);
+                garbage += next - offset;
+            } else {
+                index.put(k, offset);
+            }
+            offset = next;
+        }
+        if (offset < end && lock != null) {
+            ch.truncate(offset);
+        }
+        size = offset;
+    }
+}
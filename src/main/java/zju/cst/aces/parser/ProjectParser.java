@@ -6,12 +6,19 @@ import com.github.javaparser.ParserConfiguration.LanguageLevel;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
 import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
 import zju.cst.aces.api.Project;
 import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.graph.CallGraph;
+import zju.cst.aces.util.MetadataCache;
+import zju.cst.aces.util.StringPool;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -22,84 +29,308 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class ProjectParser {
 
+    public static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
     public static final JavaParser parser = new JavaParser();
     public Path srcFolderPath;
     public Path outputPath;
-    public Map<String, Set<String>> classMap = new HashMap<>();
-    public static Config config;
+    public Map<String, Set<String>> classMap = new ConcurrentHashMap<>();
+    public Config config;
     public int classCount = 0;
     public int methodCount = 0;
+    private ParseManifest manifest;
+    private int removedFiles = 0;
+    private BytecodeDependencies bytecode;
 
     public ProjectParser(Config config) {
         this.srcFolderPath = Paths.get(config.getProject().getBasedir().getAbsolutePath(), "src", "main", "java");
         this.config = config;
         this.outputPath = config.getParseOutput();
         JavaSymbolSolver symbolSolver = getSymbolSolver();
-        parser.getParserConfiguration().setSymbolResolver(symbolSolver);
-        setLanguageLevel(parser.getParserConfiguration());
+        // a parser set on the config, such as the one of an upstream module, keeps its own symbol solver
         if (config.parser == null) {
+            parser.getParserConfiguration().setSymbolResolver(symbolSolver);
+            setLanguageLevel(parser.getParserConfiguration());
             config.setParser(parser);
         }
     }
 
     /**
-     * Parse the project.
+     * Parse the project. With incremental parsing enabled and a previous parse output present, only the files
+     * changed since then, and the files depending on their classes, are parsed again. With the reactor index
+     * enabled, the upstream modules not yet parsed in this build are parsed first.
      */
     public void parse() {
+        if (config.isEnableReactorIndex()) {
+            ReactorIndex.build(config);
+        }
+        parseModule();
+        ReactorIndex.register(config);
+    }
+
+    void parseModule() {
         List<String> classPaths = scanSourceDirectory(config.getProject());
         if (classPaths.isEmpty()) {
             config.getLog().warn("No java file found in " + srcFolderPath);
             return;
         }
-        for (String classPath : classPaths) {
-            try {
-                String packagePath = classPath.substring(srcFolderPath.toString().length() + 1);
-                Path output = outputPath.resolve(packagePath).getParent();
-                ClassParser classParser = new ClassParser(config, output);
-                int classNum = classParser.extractClass(classPath);
-
-                if (classNum == 0) {
-                    continue;
-                }
-                addClassMap(outputPath, packagePath);
-                classCount += classNum;
-                methodCount += classParser.methodCount;
-            } catch (Exception e) {
-                throw new RuntimeException("In ProjectParser.parse: " + e);
+        // a fixed file order keeps the class indices deterministic, in both sequential and parallel mode
+        Collections.sort(classPaths);
+        ParseStore store = ParseStore.open(outputPath);
+        Map<String, Integer> previousIndices = new HashMap<>();
+        List<String> toParse = null;
+        if (config.isEnableIncrementalParse() && ParseStore.exists(outputPath)) {
+            ParseManifest previous = ParseManifest.load(outputPath);
+            if (previous != null) {
+                toParse = prepareIncremental(classPaths, store, previous, previousIndices);
             }
         }
+        if (toParse == null) {
+            store.clear();
+            manifest = config.isEnableIncrementalParse() ? new ParseManifest() : null;
+            ParseManifest.delete(outputPath);
+            toParse = classPaths;
+        } else if (toParse.isEmpty() && removedFiles == 0) {
+            manifest.save(outputPath);
+            config.getLog().info("\nParse output is up to date");
+            return;
+        } else {
+            config.getLog().info("\nReparsing " + toParse.size() + " changed files, " + removedFiles + " files removed");
+        }
+        MetadataCache.invalidateAll();
+        StringPool.shared().clear();
+        CallGraph.invalidateAll();
+        ClassParser.clearResolutionCache();
+        if (config.isEnableBytecodeDependencies()) {
+            bytecode = BytecodeDependencies.load(config.getProject().getBuildPath(), config.getClassPaths(),
+                    config.getParseThreads());
+            config.getLog().debug("Read " + bytecode.size() + " compiled classes from " + config.getProject().getBuildPath());
+        }
+        try {
+            parseFiles(toParse, previousIndices);
+        } finally {
+            closeBytecode();
+        }
+        store.flush();
+        if (store.getGarbageRatio() > 0.5) {
+            store.compact();
+        }
+        if (manifest != null) {
+            manifest.setNextIndex(Config.sharedInteger.get());
+            manifest.save(outputPath);
+        }
         exportClassMapping();
         exportJson(config.getClassNameMapPath(), classMap);
+        ClassNameIndex index = ClassNameIndex.publish(config.getClassNameMapPath(), classMap);
+        if (!index.getAmbiguousNames().isEmpty()) {
+            config.getLog().debug("Ambiguous class names, use full qualified names for: " + index.getAmbiguousNames());
+        }
         config.getLog().info("\nParsed classes: " + classCount + "\nParsed methods: " + methodCount);
     }
 
-    public void addClassMap(Path outputPath, String packagePath) {
-        if (Paths.get(packagePath).getParent() == null) {
+    private void closeBytecode() {
+        if (bytecode == null) {
             return;
         }
-        Path path = outputPath.resolve(packagePath).getParent();
-        String packageDeclaration = path.toString().substring(outputPath.toString().length() + 1).replace(File.separator, ".");
-        // list the directories in the path
-        File[] files = path.toFile().listFiles();
-        if (files == null) {
-            return;
+        try {
+            bytecode.close();
+        } catch (IOException e) {
+            config.getLog().warn("Close compiled class lookup failed: " + e);
+        }
+        bytecode = null;
+    }
+
+    /**
+     * Compare the source files with the manifest of the previous parse and drop the outdated classes from the
+     * store and the class maps.
+     *
+     * @return the files to parse again, or null if the previous output cannot be updated and a full parse is needed
+     */
+    private List<String> prepareIncremental(List<String> classPaths, ParseStore store, ParseManifest previous,
+                                            Map<String, Integer> previousIndices) {
+        Path classMappingPath = config.tmpOutput.resolve("classMapping.json");
+        if (!Files.exists(classMappingPath) || !Files.exists(config.getClassNameMapPath())) {
+            return null;
+        }
+        List<String> changed = new ArrayList<>();
+        try {
+            for (String classPath : classPaths) {
+                if (previous.isChanged(classPath)) {
+                    changed.add(classPath);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.prepareIncremental: " + e);
+        }
+        Set<String> current = new HashSet<>(classPaths);
+        List<String> deleted = new ArrayList<>();
+        for (String file : previous.getFiles().keySet()) {
+            if (!current.contains(file)) {
+                deleted.add(file);
+            }
         }
-        for (File file : files) {
-            if (file.isDirectory()) {
-                String className = file.getName();
-                String fullClassName = packageDeclaration + "." + className;
-                if (classMap.containsKey(className)) {
-                    classMap.get(className).add(fullClassName);
-                } else {
-                    Set<String> fullClassNames = new HashSet<>();
-                    fullClassNames.add(fullClassName);
-                    classMap.put(className, fullClassNames);
+        // with the reactor index the class mapping is shared by the modules parsed in this JVM, merge this module's part
+        try {
+            Map<String, Map<String, String>> classMapping = GSON.fromJson(Files.readString(classMappingPath, StandardCharsets.UTF_8),
+                    new TypeToken<LinkedHashMap<String, Map<String, String>>>() {}.getType());
+            synchronized (Config.class) {
+                if (Config.classMapping == null) {
+                    Config.classMapping = new LinkedHashMap<>();
                 }
+                Config.classMapping.putAll(classMapping);
+            }
+            Map<String, Set<String>> classNames = GSON.fromJson(Files.readString(config.getClassNameMapPath(), StandardCharsets.UTF_8),
+                    new TypeToken<Map<String, Set<String>>>() {}.getType());
+            classNames.forEach((name, fullNames) -> classMap.computeIfAbsent(name, k -> ConcurrentHashMap.newKeySet()).addAll(fullNames));
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+        // reserve the indices of the previous parse even if nothing changed, so later modules do not reuse them
+        Config.sharedInteger.set(Math.max(Config.sharedInteger.get(), previous.getNextIndex()));
+        manifest = previous;
+        removedFiles = deleted.size();
+        if (changed.isEmpty() && deleted.isEmpty()) {
+            return changed;
+        }
+
+        Set<String> outdated = new HashSet<>();
+        for (String file : changed) {
+            ParseManifest.Entry entry = previous.getFiles().get(file);
+            if (entry != null) {
+                outdated.addAll(entry.getClasses());
+            }
+        }
+        for (String file : deleted) {
+            outdated.addAll(previous.remove(file).getClasses());
+        }
+        // the dependency info of dependent classes may refer to members that changed, parse them again as well
+        Set<String> changedFiles = new HashSet<>(changed);
+        Set<String> dependents = new HashSet<>();
+        for (Map.Entry<String, ParseManifest.Entry> file : previous.getFiles().entrySet()) {
+            if (!changedFiles.contains(file.getKey()) && !Collections.disjoint(file.getValue().getDependencies(), outdated)) {
+                dependents.add(file.getKey());
             }
         }
+        for (String file : dependents) {
+            changed.add(file);
+            outdated.addAll(previous.getFiles().get(file).getClasses());
+        }
+        Collections.sort(changed);
+
+        for (String fullClassName : outdated) {
+            ClassInfo classInfo = store.getClassInfo(fullClassName);
+            if (classInfo != null) {
+                previousIndices.put(fullClassName, classInfo.index);
+                synchronized (Config.class) {
+                    Config.classMapping.remove("class" + classInfo.index);
+                }
+            }
+            store.removeClass(fullClassName);
+            String className = fullClassName.substring(fullClassName.lastIndexOf(".") + 1);
+            Set<String> fullNames = classMap.get(className);
+            if (fullNames != null) {
+                fullNames.remove(fullClassName);
+                if (fullNames.isEmpty()) {
+                    classMap.remove(className);
+                }
+            }
+        }
+        return changed;
+    }
+
+    private void parseFiles(List<String> classPaths, Map<String, Integer> previousIndices) {
+        if (config.getParseThreads() > 1 && classPaths.size() > 1) {
+            parseParallel(classPaths, previousIndices);
+            return;
+        }
+        for (String classPath : classPaths) {
+            try {
+                ClassParser classParser = new ClassParser(config, getClassOutputPath(classPath));
+                classParser.setBytecodeDependencies(bytecode);
+                int classNum = classParser.parseClasses(classPath);
+                classParser.exportClasses(previousIndices);
+                collect(classPath, classParser, classNum);
+            } catch (Exception e) {
+                throw new RuntimeException("In ProjectParser.parse: " + e);
+            }
+        }
+    }
+
+    /**
+     * Parse the files on a bounded pool, each worker thread with its own parser and symbol solver.
+     * The results are exported in file order, so the class indices match a sequential parse.
+     */
+    private void parseParallel(List<String> classPaths, Map<String, Integer> previousIndices) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.getParseThreads(), classPaths.size()));
+        ThreadLocal<JavaParser> parsers = ThreadLocal.withInitial(() -> newParser(config));
+        List<Future<ClassParser>> futures = new ArrayList<>();
+        for (String classPath : classPaths) {
+            futures.add(executor.submit(() -> {
+                ClassParser classParser = new ClassParser(config, getClassOutputPath(classPath), parsers.get());
+                classParser.setBytecodeDependencies(bytecode);
+                classParser.parseClasses(classPath);
+                return classParser;
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                ClassParser classParser = futures.get(i).get();
+                classParser.exportClasses(previousIndices);
+                collect(classPaths.get(i), classParser, classParser.classCount);
+            }
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            throw new RuntimeException("In ProjectParser.parseParallel: " + e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void collect(String classPath, ClassParser classParser, int classNum) throws IOException {
+        if (manifest != null) {
+            manifest.put(classPath, classParser.parsedClasses, classParser.dependencies);
+        }
+        if (classNum == 0) {
+            return;
+        }
+        addClassMap(classParser.parsedClasses);
+        classCount += classNum;
+        methodCount += classParser.methodCount;
+    }
+
+    private Path getClassOutputPath(String classPath) {
+        Path path = Paths.get(classPath);
+        for (String root : config.getProject().getCompileSourceRoots()) {
+            Path rootPath = Paths.get(root);
+            if (path.startsWith(rootPath)) {
+                return outputPath.resolve(rootPath.relativize(path)).getParent();
+            }
+        }
+        String packagePath = classPath.substring(srcFolderPath.toString().length() + 1);
+        return outputPath.resolve(packagePath).getParent();
+    }
+
+    /**
+     * A parser with its own symbol solver, for a thread other than the one using {@link Config#getParser()}.
+     */
+    static JavaParser newParser(Config config) {
+        JavaParser javaParser = new JavaParser();
+        javaParser.getParserConfiguration().setSymbolResolver(new JavaSymbolSolver(newTypeSolver(config)));
+        setLanguageLevel(javaParser.getParserConfiguration());
+        return javaParser;
+    }
+
+    public void addClassMap(List<String> fullClassNames) {
+        for (String fullClassName : fullClassNames) {
+            // classes in the default package are not addressable by full name
+            if (!fullClassName.contains(".")) {
+                continue;
+            }
+            String className = fullClassName.substring(fullClassName.lastIndexOf(".") + 1);
+            classMap.computeIfAbsent(className, k -> ConcurrentHashMap.newKeySet()).add(fullClassName);
+        }
     }
 
     public static void exportJson(Path path, Object obj) {
@@ -111,16 +342,22 @@ public class ProjectParser {
             }
         }
         try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(path.toFile()), StandardCharsets.UTF_8)){
-            writer.write(config.getGSON().toJson(obj));
+            writer.write(GSON.toJson(obj));
         } catch (Exception e) {
             throw new RuntimeException("In ProjectParser.exportJson: " + e);
         }
     }
 
+    /**
+     * The java files under all compile source roots of the project, including generated sources.
+     */
     public static List<String> scanSourceDirectory(Project project) {
         List<String> classPaths = new ArrayList<>();
-        File[] files = Paths.get(project.getCompileSourceRoots().get(0)).toFile().listFiles();
-        if (files != null) {
+        for (String root : project.getCompileSourceRoots()) {
+            File[] files = Paths.get(root).toFile().listFiles();
+            if (files == null) {
+                continue;
+            }
             for (File file : files) {
                 try {
                     Files.walk(file.toPath()).forEach(path -> {
@@ -137,28 +374,30 @@ public class ProjectParser {
     }
 
     public JavaSymbolSolver getSymbolSolver() {
+        CombinedTypeSolver combinedTypeSolver = newTypeSolver(config);
+        JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
+        config.setParserFacade(JavaParserFacade.get(combinedTypeSolver));
+        return symbolSolver;
+    }
+
+    private static CombinedTypeSolver newTypeSolver(Config config) {
         CombinedTypeSolver combinedTypeSolver = new CombinedTypeSolver();
         combinedTypeSolver.add(new ReflectionTypeSolver());
-        for (String dep : config.getClassPaths()) {
-            try {
-                File depFile = new File(dep);
-                if (!depFile.exists() || !dep.endsWith("jar")) {
-                    continue;
-                }
-                combinedTypeSolver.add(new JarTypeSolver(depFile));
-            } catch (Exception e) {
-                config.getLog().warn(e.getMessage());
-                config.getLog().debug(e.getMessage());
+        // the jar index is shared by every parser and task on the same classpath
+        combinedTypeSolver.add(TypeIndex.of(config.getClassPaths(), config.getTypeIndexDir()));
+        List<String> sourceRoots = new ArrayList<>(config.getProject().getCompileSourceRoots()); // TODO: remove MavenProject
+        if (config.isEnableReactorIndex()) {
+            // upstream classes resolve from their sources, even before the upstream modules are packaged
+            for (Project module : ReactorIndex.getUpstreamProjects(config.getProject())) {
+                sourceRoots.addAll(module.getCompileSourceRoots());
             }
         }
-        for (String src : config.getProject().getCompileSourceRoots()) { // TODO: remove MavenProject
+        for (String src : sourceRoots) {
             if (new File(src).exists()) {
                 combinedTypeSolver.add(new JavaParserTypeSolver(src));
             }
         }
-        JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
-        config.setParserFacade(JavaParserFacade.get(combinedTypeSolver));
-        return symbolSolver;
+        return combinedTypeSolver;
     }
 
     public static void walkDep(DependencyNode node, Set<DependencyNode> depSet) {
@@ -170,10 +409,13 @@ public class ProjectParser {
 
     public void exportClassMapping() {
         Path savePath = config.tmpOutput.resolve("classMapping.json");
-        exportJson(savePath, config.classMapping);
+        // the class mapping is shared by the modules parsed in this JVM
+        synchronized (Config.class) {
+            exportJson(savePath, Config.classMapping);
+        }
     }
 
-    private void setLanguageLevel(ParserConfiguration configuration) {
+    private static void setLanguageLevel(ParserConfiguration configuration) {
         int version = Runtime.version().feature();
 //        int versionPrefix = Integer.parseInt(System.getProperty("java.version").split("\\.")[0]);
         switch (version) {
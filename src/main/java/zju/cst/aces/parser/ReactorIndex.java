@@ -0,0 +1,224 @@
+package zju.cst.aces.parser;
+
+import zju.cst.aces.api.Project;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reactor-wide index of the parsed modules of a multi-module build.
+ * <p>
+ * The upstream modules of a module are parsed once per build, whichever downstream module needs them first, and
+ * their class and method information is looked up by full class name from the runs of every downstream module.
+ * Modules are parsed on a shared pool as soon as their own upstream modules are, so independent modules are
+ * parsed concurrently and a module's index is complete once its parse has finished.
+ */
+public class ReactorIndex {
+    private static final Map<Path, CompletableFuture<Config>> MODULES = new ConcurrentHashMap<>();
+    private static final Map<Path, ReactorIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final List<Config> upstream;
+    private volatile Map<String, Config> owners;
+
+    private ReactorIndex(List<Config> upstream) {
+        this.upstream = upstream;
+    }
+
+    /**
+     * Parse the upstream modules of the configured project that have not been parsed in this build yet, and index
+     * them for the project.
+     */
+    public static void build(Config config) {
+        List<Project> modules = getUpstreamProjects(config.getProject());
+        if (modules.isEmpty()) {
+            return;
+        }
+        Path base = getTmpOutputBase(config);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(config.getParseThreads(), modules.size())));
+        Map<Path, CompletableFuture<Config>> scheduled = new HashMap<>();
+        try {
+            List<CompletableFuture<Config>> futures = new ArrayList<>();
+            for (Project module : modules) {
+                futures.add(schedule(config, base, module, scheduled, executor));
+            }
+            List<Config> upstream = new ArrayList<>();
+            for (CompletableFuture<Config> future : futures) {
+                upstream.add(future.get());
+            }
+            INDEXES.put(key(config.getParseOutput()), new ReactorIndex(upstream));
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("In ReactorIndex.build: " + e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Mark a module as parsed, so downstream modules of the same build reuse its parse output.
+     */
+    static void register(Config config) {
+        MODULES.putIfAbsent(key(config.getParseOutput()), CompletableFuture.completedFuture(config));
+    }
+
+    /**
+     * The index of the upstream modules of the configured project, null if it has none or the reactor index is
+     * disabled.
+     */
+    public static ReactorIndex of(Config config) {
+        if (!config.isEnableReactorIndex()) {
+            return null;
+        }
+        return INDEXES.get(key(config.getParseOutput()));
+    }
+
+    /**
+     * Forget the parsed modules, used when a new build starts in the same JVM.
+     */
+    public static void clear() {
+        MODULES.clear();
+        INDEXES.clear();
+    }
+
+    /**
+     * The class info of a class declared in an upstream module, with its dependencies resolved.
+     */
+    public ClassInfo getClassInfo(String fullClassName) {
+        Config module = getOwners().get(fullClassName);
+        if (module == null) {
+            return null;
+        }
+        ClassInfo classInfo = ParseStore.open(module.getParseOutput()).getClassInfo(fullClassName);
+        return classInfo == null ? null : LazyResolver.resolve(module, classInfo);
+    }
+
+    /**
+     * The method info of a method declared in an upstream module, with its dependencies resolved.
+     */
+    public MethodInfo getMethodInfo(ClassInfo classInfo, String methodSignature) {
+        Config module = getOwners().get(classInfo.fullClassName);
+        if (module == null) {
+            return null;
+        }
+        MethodInfo methodInfo = ParseStore.open(module.getParseOutput()).getMethodInfo(classInfo.fullClassName, methodSignature);
+        return methodInfo == null ? null : LazyResolver.resolve(module, classInfo, methodInfo);
+    }
+
+    public int size() {
+        return getOwners().size();
+    }
+
+    /**
+     * The upstream modules of a project, nearest first, each of them once.
+     */
+    public static List<Project> getUpstreamProjects(Project project) {
+        Map<Path, Project> modules = new LinkedHashMap<>();
+        Deque<Project> queue = new ArrayDeque<>(project.getUpstreamProjects());
+        while (!queue.isEmpty()) {
+            Project module = queue.poll();
+            if (modules.putIfAbsent(module.getBasedir().toPath().toAbsolutePath().normalize(), module) == null) {
+                queue.addAll(module.getUpstreamProjects());
+            }
+        }
+        return new ArrayList<>(modules.values());
+    }
+
+    private Map<String, Config> getOwners() {
+        if (owners == null) {
+            synchronized (this) {
+                if (owners == null) {
+                    // the nearest module declaring a class wins, like on the compile classpath
+                    Map<String, Config> map = new HashMap<>();
+                    for (Config module : upstream) {
+                        if (!ParseStore.exists(module.getParseOutput())) {
+                            continue;
+                        }
+                        for (String fullClassName : ParseStore.open(module.getParseOutput()).getClassNames()) {
+                            map.putIfAbsent(fullClassName, module);
+                        }
+                    }
+                    owners = map;
+                }
+            }
+        }
+        return owners;
+    }
+
+    private static CompletableFuture<Config> schedule(Config config, Path base, Project module,
+                                                      Map<Path, CompletableFuture<Config>> scheduled, ExecutorService executor) {
+        Path moduleDir = module.getBasedir().toPath().toAbsolutePath().normalize();
+        CompletableFuture<Config> future = scheduled.get(moduleDir);
+        if (future != null) {
+            return future;
+        }
+        Config moduleConfig = newModuleConfig(config, base, module);
+        List<CompletableFuture<Config>> dependencies = new ArrayList<>();
+        for (Project dependency : module.getUpstreamProjects()) {
+            dependencies.add(schedule(config, base, dependency, scheduled, executor));
+        }
+        CompletableFuture<Config> parsed = new CompletableFuture<>();
+        CompletableFuture<Config> previous = MODULES.putIfAbsent(key(moduleConfig.getParseOutput()), parsed);
+        if (previous != null) {
+            future = previous;
+        } else {
+            CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                    .thenRunAsync(() -> {
+                        if (!module.getPackaging().equals("pom")) {
+                            config.getLog().info("\nParsing upstream module " + module.getArtifactId());
+                            new ProjectParser(moduleConfig).parseModule();
+                        }
+                    }, executor)
+                    .whenComplete((v, e) -> {
+                        if (e != null) {
+                            // a later build may try again
+                            MODULES.remove(key(moduleConfig.getParseOutput()), parsed);
+                            parsed.completeExceptionally(e);
+                        } else {
+                            parsed.complete(moduleConfig);
+                        }
+                    });
+            future = parsed;
+        }
+        scheduled.put(moduleDir, future);
+        return future;
+    }
+
+    /**
+     * The parse settings of the configured project applied to an upstream module. The classpath of a project
+     * covers the classpaths of its upstream modules.
+     */
+    private static Config newModuleConfig(Config config, Path base, Project module) {
+        Config moduleConfig = new Config.ConfigBuilder(module)
+                .tmpOutput(base)
+                .classPaths(config.getClassPaths())
+                .log(config.getLog())
+                .parseThreads(config.getParseThreads())
+                .enableIncrementalParse(config.isEnableIncrementalParse())
+                .enableLazyResolution(config.isEnableLazyResolution())
+                .enableBytecodeDependencies(config.isEnableBytecodeDependencies())
+                .typeIndexDir(config.getTypeIndexDir())
+                .build();
+        moduleConfig.setParser(ProjectParser.newParser(moduleConfig));
+        return moduleConfig;
+    }
+
+    /**
+     * The tmp output directory before the artifact ids of the project and its parents are appended to it.
+     */
+    private static Path getTmpOutputBase(Config config) {
+        Path base = config.getTmpOutput();
+        Project parent = config.getProject().getParent();
+        while (parent != null && parent.getBasedir() != null) {
+            base = base.getParent();
+            parent = parent.getParent();
+        }
+        return base.getParent();
+    }
+
+    private static Path key(Path parseOutput) {
+        return parseOutput.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,65 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.ast.Node;
+
+/**
+ * The source text of a compilation unit, stringified once with the start offset of every line precomputed,
+ * so the code between two positions is a single substring instead of a split of the whole file.
+ * Line breaks inside a slice are returned as {@link System#lineSeparator()}.
+ */
+public class SourceView {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final String text;
+    private final int[] lineStarts;
+
+    public SourceView(String text) {
+        this.text = text;
+        int lines = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        this.lineStarts = new int[lines];
+        int line = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineStarts[line++] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * The view of the tokens of a node, usually a compilation unit.
+     */
+    public static SourceView of(Node node) {
+        return new SourceView(node.getTokenRange().map(Object::toString).orElse(""));
+    }
+
+    /**
+     * The code from {@code begin} to {@code end}, both inclusive.
+     */
+    public String slice(Position begin, Position end) {
+        int from = offset(begin.line, begin.column - 1);
+        int to = offset(end.line, end.column);
+        String code = text.substring(from, Math.max(from, to));
+        return "\n".equals(LINE_SEPARATOR) ? code : code.replace("\n", LINE_SEPARATOR);
+    }
+
+    /**
+     * The code of a node, from its first to its last token.
+     */
+    public String slice(Node node) {
+        return slice(node.getBegin().orElseThrow(), node.getEnd().orElseThrow());
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    private int offset(int line, int column) {
+        return Math.min(lineStarts[line - 1] + column, text.length());
+    }
+}
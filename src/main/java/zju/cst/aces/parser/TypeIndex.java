@@ -0,0 +1,180 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+
+/**
+ * Type solver over the dependency jars of a classpath, shared by every parser that uses the same classpath.
+ * <p>
+ * The index maps each class name to the jar that provides it, the first jar on the classpath winning as with a
+ * {@link CombinedTypeSolver}. It is keyed by a fingerprint of the jar paths, sizes and modification times,
+ * persisted under the index directory and reused by later runs, so the jars are only listed again when the
+ * classpath changes. A {@link JarTypeSolver} is created only for the jars a lookup actually hits.
+ * <p>
+ * The jar solvers resolve their super types against this index and the JDK only, never against the sources of
+ * a project, which keeps them independent of the (not thread-safe) source solvers and lets all threads share them.
+ */
+public class TypeIndex implements TypeSolver {
+    private static final Gson GSON = new Gson();
+    private static final Map<String, TypeIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final String fingerprint;
+    private final List<String> jars;
+    private final Map<String, Integer> classToJar;
+    private final Map<Integer, JarTypeSolver> solvers = new ConcurrentHashMap<>();
+    private final TypeSolver root;
+
+    private TypeIndex(String fingerprint, List<String> jars, Map<String, Integer> classToJar) {
+        this.fingerprint = fingerprint;
+        this.jars = jars;
+        this.classToJar = classToJar;
+        CombinedTypeSolver combined = new CombinedTypeSolver();
+        combined.add(new ReflectionTypeSolver());
+        combined.add(this);
+        this.root = combined;
+    }
+
+    /**
+     * Get the index of the jars on a classpath, loading it from the index directory or building it if needed.
+     * Entries that are not existing jar files are ignored.
+     */
+    public static TypeIndex of(List<String> classPaths, Path indexDir) {
+        List<String> jars = new ArrayList<>();
+        for (String dep : classPaths) {
+            if (dep.endsWith("jar") && new File(dep).isFile()) {
+                jars.add(dep);
+            }
+        }
+        String fingerprint = fingerprint(jars);
+        return INDEXES.computeIfAbsent(fingerprint, f -> {
+            Path indexPath = indexDir.resolve(f + ".json");
+            Map<String, Integer> classToJar = load(indexPath);
+            if (classToJar == null) {
+                classToJar = build(jars);
+                save(indexPath, classToJar);
+            }
+            return new TypeIndex(f, jars, classToJar);
+        });
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int size() {
+        return classToJar.size();
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return root;
+    }
+
+    /**
+     * The index keeps its own parent, being a child of a project's solver must not change how jar types resolve.
+     */
+    @Override
+    public void setParent(TypeSolver parent) {
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        Integer jar = classToJar.get(name);
+        if (jar == null) {
+            return SymbolReference.unsolved();
+        }
+        JarTypeSolver solver = solvers.computeIfAbsent(jar, this::newJarTypeSolver);
+        if (solver == null) {
+            return SymbolReference.unsolved();
+        }
+        // the javassist class pool behind a jar solver is not safe for concurrent lookups
+        synchronized (solver) {
+            return solver.tryToSolveType(name);
+        }
+    }
+
+    private JarTypeSolver newJarTypeSolver(int jar) {
+        try {
+            JarTypeSolver solver = new JarTypeSolver(jars.get(jar));
+            solver.setParent(this);
+            return solver;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Integer> build(List<String> jars) {
+        Map<String, Integer> classToJar = new HashMap<>();
+        for (int i = 0; i < jars.size(); i++) {
+            try (JarFile jarFile = new JarFile(jars.get(i))) {
+                final int jar = i;
+                jarFile.stream()
+                        .map(entry -> entry.getName())
+                        .filter(name -> name.endsWith(".class") && !name.endsWith("module-info.class"))
+                        .forEach(name -> classToJar.putIfAbsent(
+                                name.substring(0, name.length() - ".class".length()).replace('/', '.').replace('$', '.'), jar));
+            } catch (IOException e) {
+                // not a readable jar, nothing to index
+            }
+        }
+        return classToJar;
+    }
+
+    private static Map<String, Integer> load(Path indexPath) {
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        try {
+            return GSON.fromJson(Files.readString(indexPath, StandardCharsets.UTF_8),
+                    new TypeToken<HashMap<String, Integer>>() {}.getType());
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    private static void save(Path indexPath, Map<String, Integer> classToJar) {
+        try {
+            Files.createDirectories(indexPath.getParent());
+            Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+            Files.writeString(tmp, GSON.toJson(classToJar), StandardCharsets.UTF_8);
+            Files.move(tmp, indexPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // the index still works in memory, it is only rebuilt by the next run
+        }
+    }
+
+    private static String fingerprint(List<String> jars) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String jar : jars) {
+                File file = new File(jar);
+                digest.update((jar + "|" + file.length() + "|" + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("In TypeIndex.fingerprint: " + e);
+        }
+    }
+}
@@ -1,10 +1,55 @@
 package zju.cst.aces.prompt;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Predicate;
 
+/**
+ * Chain-of-thought: an ordered plan of steps applied to a single state.
+ * Each step sees the result of the previous one and the chain stops at the first result that reaches the goal.
+ * A chain is the degenerate {@link TOT} with one branch and a beam of one, run on the calling thread.
+ *
+ * @param <T> the state carried along the chain
+ */
 public class COT<T> {
-    private List<T> depList;
+    private final List<String> plan = new ArrayList<>();
+    private Predicate<T> goal = t -> false;
+
+    /**
+     * Append a step description to the plan.
+     */
+    public COT<T> step(String description) {
+        plan.add(description);
+        return this;
+    }
+
+    public COT<T> goal(Predicate<T> goal) {
+        this.goal = goal;
+        return this;
+    }
+
+    public List<String> getPlan() {
+        return Collections.unmodifiableList(plan);
+    }
+
+    /**
+     * @deprecated a chain is run with {@link #run(Object, TOT.Step)}; this does nothing
+     */
+    @Deprecated
     public void generate() {
+    }
 
+    /**
+     * Run one step per plan entry.
+     *
+     * @return the first state that reaches the goal, or empty if the chain ends without reaching it
+     */
+    public Optional<T> run(T state, TOT.Step<T> step) throws Exception {
+        for (int depth = 0; depth < plan.size() && state != null; depth++) {
+            state = step.expand(state, depth);
+            if (state != null && goal.test(state)) {
+                return Optional.of(state);
+            }
+        }
+        return Optional.empty();
     }
 }
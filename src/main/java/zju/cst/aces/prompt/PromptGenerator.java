@@ -14,7 +14,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
@@ -51,8 +50,8 @@ public class PromptGenerator {
         try {
             promptTemplate.readProperties();
             ExampleUsage exampleUsage = new ExampleUsage(config, promptInfo.className);
-            Map<String, String> cdep_temp = new HashMap<>();
-            Map<String, String> mdep_temp = new HashMap<>();
+            Map<String, String> cdep_temp = new LinkedHashMap<>();
+            Map<String, String> mdep_temp = new LinkedHashMap<>();
 
             // Map<String, String>, key: dependent class names
             promptTemplate.dataModel.put("dep_packages", getDepPackages(promptInfo.getClassInfo(), promptInfo.getMethodInfo()));
@@ -76,8 +75,8 @@ public class PromptGenerator {
             promptTemplate.dataModel.put("class_name", promptInfo.getClassName());
             promptTemplate.dataModel.put("class_sig", promptInfo.getClassInfo().classSignature);
             promptTemplate.dataModel.put("package", promptInfo.getClassInfo().packageDeclaration);
-            promptTemplate.dataModel.put("class_body", promptInfo.getClassInfo().classDeclarationCode);
-            promptTemplate.dataModel.put("file_content", promptInfo.getClassInfo().compilationUnitCode);
+            promptTemplate.dataModel.put("class_body", promptInfo.getClassInfo().getClassDeclarationCode());
+            promptTemplate.dataModel.put("file_content", promptInfo.getClassInfo().getCompilationUnitCode());
             promptTemplate.dataModel.put("imports", AbstractRunner.joinLines(promptInfo.getClassInfo().imports));
             promptTemplate.dataModel.put("fields", AbstractRunner.joinLines(promptInfo.getClassInfo().fields));
             if (!promptInfo.getClassInfo().constructorSigs.isEmpty()) {
@@ -180,12 +179,39 @@ public class PromptGenerator {
         return filename;
     }
 
+    /**
+     * Render the plan of a chain as numbered step-by-step instructions.
+     *
+     * @deprecated prompts no longer embed the plan, chains and trees are run by {@link COT#run} and {@link TOT#search}
+     */
+    @Deprecated
     public String buildCOT(COT<?> cot) {
-        return "";
+        if (cot == null || cot.getPlan().isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("Let's think step by step:\n");
+        for (int i = 0; i < cot.getPlan().size(); i++) {
+            sb.append(i + 1).append(". ").append(cot.getPlan().get(i)).append("\n");
+        }
+        return sb.toString();
     }
 
+    /**
+     * Render the branches of a tree as alternative approaches to explore.
+     *
+     * @deprecated prompts no longer embed the branches, trees are run by {@link TOT#search}
+     */
+    @Deprecated
     public String buildTOT(TOT<?> tot) {
-        return "";
+        if (tot == null || tot.getBranches().isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("Consider the following alternative approaches, "
+                + "evaluate each of them and continue with the most promising one:\n");
+        for (int i = 0; i < tot.getBranches().size(); i++) {
+            sb.append("Approach ").append(i + 1).append(": ").append(tot.getBranches().get(i)).append("\n");
+        }
+        return sb.toString();
     }
 
     public Map<String, String> getDepBrief(MethodInfo methodInfo) throws IOException {
@@ -193,11 +219,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : methodInfo.dependentMethods.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depBrief;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -219,11 +241,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : methodInfo.dependentMethods.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -245,11 +263,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depFields;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -262,11 +276,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depFields;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -280,11 +290,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -297,11 +303,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -315,11 +317,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -341,11 +339,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -368,11 +362,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -385,11 +375,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -403,15 +389,11 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
-            depClassBodies.put(depClassName, depClassInfo.classDeclarationCode);
+            depClassBodies.put(depClassName, depClassInfo.getClassDeclarationCode());
         }
 
         for (Map.Entry<String, Set<String>> entry : methodInfo.dependentMethods.entrySet()) {
@@ -420,15 +402,11 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
-            depClassBodies.put(depClassName, depClassInfo.classDeclarationCode);
+            depClassBodies.put(depClassName, depClassInfo.getClassDeclarationCode());
         }
         return depClassBodies;
     }
@@ -438,11 +416,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depPackages;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -455,11 +429,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depPackages;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -473,11 +443,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depImports;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -490,11 +456,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depImports;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -508,11 +470,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -525,11 +483,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -543,11 +497,7 @@ public class PromptGenerator {
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -569,11 +519,7 @@ public class PromptGenerator {
                 continue;
             }
             String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, fullDepClassName);
             if (depClassInfo == null) {
                 continue;
             }
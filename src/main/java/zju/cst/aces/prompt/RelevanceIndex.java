@@ -0,0 +1,137 @@
+package zju.cst.aces.prompt;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A small local BM25 index over code snippets, used to rank the dependency context of a focal method.
+ * Documents and queries are bags of identifier terms: every identifier is kept as a whole and also
+ * split on camel case and underscores, so {@code getUserName} matches {@code user} and {@code name}.
+ */
+public class RelevanceIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+    private static final Pattern CAMEL_CASE = Pattern.compile("(?<=[a-z0-9])(?=[A-Z])|(?<=[A-Z])(?=[A-Z][a-z])|_+");
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "abstract", "boolean", "break", "byte", "case", "catch", "char", "class", "continue", "default", "do",
+            "double", "else", "enum", "extends", "false", "final", "finally", "float", "for", "if", "implements",
+            "import", "instanceof", "int", "interface", "long", "new", "null", "package", "private", "protected",
+            "public", "return", "short", "static", "super", "switch", "synchronized", "this", "throw", "throws",
+            "true", "try", "void", "volatile", "while", "var", "java", "lang", "util", "override", "string",
+            "object", "get", "set", "is"));
+
+    private final Map<String, Map<String, Integer>> termFreqs = new LinkedHashMap<>();
+    private final Map<String, Integer> docFreqs = new HashMap<>();
+    private final Map<String, Integer> docLengths = new HashMap<>();
+    private long totalLength = 0;
+
+    /**
+     * Add a document to the index. Adding an existing id replaces nothing, the first document wins.
+     */
+    public void add(String id, String text) {
+        if (termFreqs.containsKey(id)) {
+            return;
+        }
+        Map<String, Integer> tf = new HashMap<>();
+        List<String> terms = tokenize(text);
+        for (String term : terms) {
+            tf.merge(term, 1, Integer::sum);
+        }
+        for (String term : tf.keySet()) {
+            docFreqs.merge(term, 1, Integer::sum);
+        }
+        termFreqs.put(id, tf);
+        docLengths.put(id, terms.size());
+        totalLength += terms.size();
+    }
+
+    public int size() {
+        return termFreqs.size();
+    }
+
+    /**
+     * BM25 score of a document for a query.
+     */
+    public double score(String id, String query) {
+        return score(id, queryTerms(query));
+    }
+
+    /**
+     * Rank all documents by their BM25 score for the query, best first.
+     * Documents with the same score keep the order in which they were added.
+     */
+    public List<String> rank(String query) {
+        Map<String, Integer> terms = queryTerms(query);
+        Map<String, Double> scores = new HashMap<>();
+        for (String id : termFreqs.keySet()) {
+            scores.put(id, score(id, terms));
+        }
+        List<String> ids = new ArrayList<>(termFreqs.keySet());
+        // List.sort is stable, so insertion order is the tie-breaker
+        ids.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        return ids;
+    }
+
+    private double score(String id, Map<String, Integer> queryTerms) {
+        Map<String, Integer> tf = termFreqs.get(id);
+        if (tf == null || tf.isEmpty()) {
+            return 0;
+        }
+        int n = termFreqs.size();
+        double avgLength = (double) totalLength / n;
+        double length = docLengths.get(id);
+        double score = 0;
+        for (Map.Entry<String, Integer> q : queryTerms.entrySet()) {
+            Integer f = tf.get(q.getKey());
+            if (f == null) {
+                continue;
+            }
+            int df = docFreqs.get(q.getKey());
+            double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            score += q.getValue() * idf * (f * (K1 + 1)) / (f + K1 * (1 - B + B * length / avgLength));
+        }
+        return score;
+    }
+
+    private static Map<String, Integer> queryTerms(String query) {
+        Map<String, Integer> terms = new HashMap<>();
+        for (String term : tokenize(query)) {
+            terms.merge(term, 1, Integer::sum);
+        }
+        return terms;
+    }
+
+    /**
+     * Split source code into identifier terms.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        Matcher matcher = IDENTIFIER.matcher(text);
+        while (matcher.find()) {
+            String identifier = matcher.group();
+            String whole = identifier.toLowerCase();
+            addTerm(terms, whole);
+            String[] parts = CAMEL_CASE.split(identifier);
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    String p = part.toLowerCase();
+                    if (!p.equals(whole)) {
+                        addTerm(terms, p);
+                    }
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static void addTerm(List<String> terms, String term) {
+        if (term.length() > 1 && !STOP_WORDS.contains(term)) {
+            terms.add(term);
+        }
+    }
+}
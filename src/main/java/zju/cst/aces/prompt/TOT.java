@@ -1,10 +1,210 @@
 package zju.cst.aces.prompt;
 
-import java.util.List;
+import zju.cst.aces.util.Cancellation;
 
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Tree-of-thought search over generation branches.
+ * <p>
+ * Every live branch is expanded by one step concurrently through the given invoker, each expansion under its own
+ * {@link Cancellation} token. After each step the partial results are scored, only the best {@code beamWidth}
+ * branches survive to the next step, and the search stops early, cancelling the in-flight expansions, as soon as one
+ * branch reaches the goal or the stop condition holds before a step. A branch whose expansion throws is dropped and reported by {@link #getFailures()}.
+ *
+ * @param <T> the state of a branch
+ */
 public class TOT<T> {
-    private List<T> depList;
-    public void generate() {
 
+    /**
+     * Expand a branch by one step. Returning null drops the branch.
+     */
+    public interface Step<T> {
+        T expand(T state, int depth) throws Exception;
+    }
+
+    /**
+     * Run a batch of tasks concurrently and return their results in order, like a shared scheduler does.
+     */
+    public interface Invoker {
+        <V> List<V> invokeAll(List<Callable<V>> tasks);
+    }
+
+    private final List<T> branches;
+    private final Invoker invoker;
+    private final List<T> pruned = Collections.synchronizedList(new ArrayList<>());
+    private final List<T> cancelled = Collections.synchronizedList(new ArrayList<>());
+    private final Map<T, Exception> failures = Collections.synchronizedMap(new IdentityHashMap<>());
+    private int beamWidth;
+    private int maxDepth;
+    private ToDoubleFunction<T> scorer = t -> 0;
+    private Predicate<T> goal = t -> false;
+    private BooleanSupplier stopWhen = () -> false;
+    private volatile boolean stopped = false;
+    private volatile List<Cancellation> expanding = Collections.emptyList();
+
+    public TOT(List<T> branches, Invoker invoker) {
+        this.branches = new ArrayList<>(branches);
+        this.invoker = invoker;
+        this.beamWidth = branches.size();
+        this.maxDepth = 1;
+    }
+
+    public TOT<T> beamWidth(int beamWidth) {
+        this.beamWidth = Math.max(1, beamWidth);
+        return this;
+    }
+
+    public TOT<T> maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public TOT<T> scorer(ToDoubleFunction<T> scorer) {
+        this.scorer = scorer;
+        return this;
+    }
+
+    public TOT<T> goal(Predicate<T> goal) {
+        this.goal = goal;
+        return this;
+    }
+
+    /**
+     * Condition checked before every step and every expansion, such as an exhausted budget; once it holds the
+     * search stops without starting further expansions.
+     */
+    public TOT<T> stopWhen(BooleanSupplier stopWhen) {
+        this.stopWhen = stopWhen;
+        return this;
+    }
+
+    public List<T> getBranches() {
+        return Collections.unmodifiableList(branches);
+    }
+
+    /**
+     * Branches dropped because they scored below the beam.
+     */
+    public List<T> getPruned() {
+        return pruned;
+    }
+
+    /**
+     * Branches whose expansion was cancelled after another branch reached the goal or the search was stopped.
+     */
+    public List<T> getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Branches whose expansion threw, with the cause.
+     */
+    public Map<T, Exception> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Stop the search, the current step is cancelled and no further step is scheduled.
+     */
+    public void stop() {
+        this.stopped = true;
+        expanding.forEach(Cancellation::cancel);
+    }
+
+    /**
+     * Whether the search was stopped by {@link #stop()} or the stop condition.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Run the search. Cancelling the token bound to the calling thread cancels the current step.
+     *
+     * @return the first branch state that reaches the goal, or empty if none does within {@code maxDepth} steps
+     */
+    public Optional<T> search(Step<T> step) {
+        List<T> frontier = new ArrayList<>(branches);
+        for (int depth = 0; depth < maxDepth && !frontier.isEmpty() && !stopped; depth++) {
+            if (stopWhen.getAsBoolean()) {
+                stopped = true;
+                break;
+            }
+            final int d = depth;
+            AtomicReference<T> reached = new AtomicReference<>();
+            List<Cancellation> tokens = new ArrayList<>();
+            List<Callable<T>> expansions = new ArrayList<>();
+            for (T state : frontier) {
+                Cancellation token = new Cancellation();
+                tokens.add(token);
+                expansions.add(() -> expand(step, state, d, token, tokens, reached));
+            }
+            expanding = tokens;
+            if (stopped) {
+                tokens.forEach(Cancellation::cancel);
+            }
+            List<T> results;
+            try (Cancellation.Registration outer = Cancellation.onCancel(() -> tokens.forEach(Cancellation::cancel))) {
+                results = invoker.invokeAll(expansions);
+            } finally {
+                expanding = Collections.emptyList();
+            }
+            Cancellation.checkpoint();
+            if (reached.get() != null) {
+                return Optional.of(reached.get());
+            }
+
+            List<T> expanded = new ArrayList<>();
+            for (T result : results) {
+                if (result != null) {
+                    expanded.add(result);
+                }
+            }
+            Map<T, Double> scores = new IdentityHashMap<>();
+            expanded.forEach(t -> scores.put(t, scorer.applyAsDouble(t)));
+            expanded.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+            frontier = new ArrayList<>(expanded.subList(0, Math.min(beamWidth, expanded.size())));
+            pruned.addAll(expanded.subList(frontier.size(), expanded.size()));
+        }
+        return Optional.empty();
+    }
+
+    private T expand(Step<T> step, T state, int depth, Cancellation token, List<Cancellation> tokens, AtomicReference<T> reached) {
+        try {
+            if (stopped || stopWhen.getAsBoolean()) {
+                stopped = true;
+                return null;
+            }
+            T result = token.call(() -> {
+                Cancellation.checkpoint();
+                return step.expand(state, depth);
+            });
+            if (result != null && goal.test(result) && reached.compareAndSet(null, result)) {
+                tokens.forEach(other -> {
+                    if (other != token) {
+                        other.cancel();
+                    }
+                });
+            }
+            return result;
+        } catch (CancellationException e) {
+            cancelled.add(state);
+            return null;
+        } catch (Exception e) {
+            if (token.isCancelled()) {
+                // the step wrapped the cancellation of a blocking call
+                cancelled.add(state);
+            } else {
+                failures.put(state, e);
+            }
+            return null;
+        }
     }
 }
@@ -12,9 +12,15 @@ import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.Message;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.graph.CallGraph;
 import zju.cst.aces.parser.ClassParser;
+import zju.cst.aces.parser.LazyResolver;
+import zju.cst.aces.parser.ParseStore;
+import zju.cst.aces.parser.ReactorIndex;
 import zju.cst.aces.prompt.PromptGenerator;
+import zju.cst.aces.prompt.RelevanceIndex;
 import zju.cst.aces.util.CodeExtractor;
+import zju.cst.aces.util.MetadataCache;
 import zju.cst.aces.util.TokenCounter;
 
 import java.io.File;
@@ -322,30 +328,78 @@ public abstract class AbstractRunner {
         promptInfo.setContext(information);
         promptInfo.setOtherMethodBrief(otherMethods);
         promptInfo.setOtherMethodBodies(otherFullMethods);
+        if (config.isEnableRelevanceRanking()) {
+            rankDependencies(config, promptInfo);
+        }
         return promptInfo;
     }
 
-    public static void addMethodDepsByDepth(Config config, String className, Set<String> methodSigs, PromptInfo promptInfo, int depth) throws IOException {
-        if (depth <= 1) {
+    /**
+     * 按与焦点方法的BM25相关性对依赖上下文排序，并在超出token预算时优先丢弃相关性最低的依赖
+     *
+     * @param config     配置信息
+     * @param promptInfo 提示信息对象
+     */
+    public static void rankDependencies(Config config, PromptInfo promptInfo) {
+        Map<String, String> constructorDeps = promptInfo.getConstructorDeps();
+        Map<String, String> methodDeps = promptInfo.getMethodDeps();
+        if (constructorDeps.size() + methodDeps.size() <= 1) {
             return;
         }
-        for (String dm : methodSigs) {
-            ClassInfo depClassInfo = getClassInfo(config, className);
-            if (depClassInfo == null) {
-                continue;
-            }
-            addConstructorDepsByDepth(config, depClassInfo, promptInfo);
-
-            MethodInfo depMethodInfo = getMethodInfo(config, depClassInfo, dm);
-            if (depMethodInfo == null) {
+        RelevanceIndex index = new RelevanceIndex();
+        constructorDeps.forEach((name, info) -> index.add("c:" + name, name + "\n" + info));
+        methodDeps.forEach((name, info) -> index.add("m:" + name, name + "\n" + info));
+
+        MethodInfo methodInfo = promptInfo.getMethodInfo();
+        String query = methodInfo.methodSignature + "\n" + methodInfo.sourceCode;
+        int budget = config.getMaxPromptTokens() - TokenCounter.countToken(promptInfo.getContext())
+                - TokenCounter.countToken(promptInfo.getOtherMethodBrief());
+
+        Map<String, String> rankedConstructorDeps = new LinkedHashMap<>();
+        Map<String, String> rankedMethodDeps = new LinkedHashMap<>();
+        int used = 0;
+        for (String id : index.rank(query)) {
+            boolean isConstructorDep = id.startsWith("c:");
+            String name = id.substring(2);
+            String info = isConstructorDep ? constructorDeps.get(name) : methodDeps.get(name);
+            int tokens = TokenCounter.countToken(info);
+            if (used + tokens > budget) {
+                config.getLog().debug("Drop low relevance dependency < " + name + " > for method < "
+                        + promptInfo.getMethodName() + " >");
                 continue;
             }
-            for (String depClassName : depMethodInfo.dependentMethods.keySet()) {
-                Set<String> depMethods = depMethodInfo.dependentMethods.get(depClassName);
-                promptInfo.addMethodDeps(depClassName, getDepInfo(config, depClassName, depMethods));
-                addMethodDepsByDepth(config, depClassName, depMethods, promptInfo, depth - 1);
+            used += tokens;
+            if (isConstructorDep) {
+                rankedConstructorDeps.put(name, info);
+            } else {
+                rankedMethodDeps.put(name, info);
             }
         }
+        promptInfo.setConstructorDeps(rankedConstructorDeps);
+        promptInfo.setMethodDeps(rankedMethodDeps);
+    }
+
+    /**
+     * 添加依赖方法在指定深度内可达的依赖信息，依赖闭包由调用图计算并缓存，每个方法只展开一次
+     *
+     * @param config     配置信息
+     * @param className  依赖类名
+     * @param methodSigs 依赖方法签名集合
+     * @param promptInfo 提示信息对象
+     * @param depth      依赖深度
+     * @throws IOException IO异常
+     */
+    public static void addMethodDepsByDepth(Config config, String className, Set<String> methodSigs, PromptInfo promptInfo, int depth) throws IOException {
+        if (depth <= 1) {
+            return;
+        }
+        CallGraph.Closure closure = CallGraph.of(config).getClosure(className, methodSigs, depth);
+        for (Map.Entry<String, Set<String>> entry : closure.getConstructorDeps().entrySet()) {
+            promptInfo.addConstructorDeps(entry.getKey(), getDepInfo(config, entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<String, Set<String>> entry : closure.getMethodDeps().entrySet()) {
+            promptInfo.addMethodDeps(entry.getKey(), getDepInfo(config, entry.getKey(), entry.getValue()));
+        }
     }
 
     public static void addConstructorDepsByDepth(Config config, ClassInfo classInfo, PromptInfo promptInfo) throws IOException {
@@ -364,8 +418,27 @@ public abstract class AbstractRunner {
      * @throws IOException IO异常
      */
     public static ClassInfo getClassInfo(Config config, String className) throws IOException {
+        String key = MetadataCache.key(config.getParseOutput(), className);
+        ClassInfo classInfo = MetadataCache.classInfos().get(key, k -> loadClassInfo(config, className));
+        if (classInfo != null && classInfo.unresolved) {
+            classInfo = LazyResolver.resolve(config, classInfo);
+            MetadataCache.classInfos().put(key, classInfo);
+        }
+        return classInfo;
+    }
+
+    private static ClassInfo loadClassInfo(Config config, String className) throws IOException {
         try {
             String fullClassName = Task.getFullClassName(config, className);
+            if (ParseStore.exists(config.getParseOutput())) {
+                ClassInfo classInfo = ParseStore.open(config.getParseOutput()).getClassInfo(fullClassName);
+                ReactorIndex reactorIndex = ReactorIndex.of(config);
+                if (classInfo == null && reactorIndex != null) {
+                    // declared in an upstream module of the build
+                    classInfo = reactorIndex.getClassInfo(fullClassName);
+                }
+                return classInfo;
+            }
             Path classInfoPath = config.getParseOutput().resolve(fullClassName.replace(".", File.separator)).resolve("class.json");
             if (!classInfoPath.toFile().exists()) {
                 return null;
@@ -377,6 +450,24 @@ public abstract class AbstractRunner {
     }
 
     public static MethodInfo getMethodInfo(Config config, ClassInfo info, String mSig) throws IOException {
+        String key = MetadataCache.key(config.getParseOutput(), info.fullClassName + "#" + mSig);
+        MethodInfo methodInfo = MetadataCache.methodInfos().get(key, k -> loadMethodInfo(config, info, mSig));
+        if (methodInfo != null && methodInfo.unresolved) {
+            methodInfo = LazyResolver.resolve(config, info, methodInfo);
+            MetadataCache.methodInfos().put(key, methodInfo);
+        }
+        return methodInfo;
+    }
+
+    private static MethodInfo loadMethodInfo(Config config, ClassInfo info, String mSig) throws IOException {
+        if (ParseStore.exists(config.getParseOutput())) {
+            MethodInfo methodInfo = ParseStore.open(config.getParseOutput()).getMethodInfo(info.fullClassName, mSig);
+            ReactorIndex reactorIndex = ReactorIndex.of(config);
+            if (methodInfo == null && reactorIndex != null) {
+                methodInfo = reactorIndex.getMethodInfo(info, mSig);
+            }
+            return methodInfo;
+        }
         String packagePath = info.getPackageName()
                 .replace("package ", "")
                 .replace(".", File.separator)
@@ -544,14 +635,18 @@ public abstract class AbstractRunner {
     }
 
     public static boolean isExceedMaxTokens(Config config, List<Message> prompt) {
+        if (countTokens(prompt) > config.maxPromptTokens) {
+            return true;
+        }
+        return false;
+    }
+
+    public static int countTokens(List<Message> prompt) {
         int count = 0;
         for (Message p : prompt) {
             count += TokenCounter.countToken(p.getContent());
         }
-        if (count > config.maxPromptTokens) {
-            return true;
-        }
-        return false;
+        return count;
     }
 
     public static boolean isExceedMaxTokens(Config config, String prompt) {
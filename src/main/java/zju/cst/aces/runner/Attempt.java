@@ -0,0 +1,60 @@
+package zju.cst.aces.runner;
+
+import lombok.Data;
+import zju.cst.aces.api.impl.ChatGenerator;
+import zju.cst.aces.api.impl.PromptConstructorImpl;
+import zju.cst.aces.api.impl.RepairImpl;
+import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.dto.RoundRecord;
+
+/**
+ * 一次测试生成尝试的状态，可按轮次逐步推进
+ */
+@Data
+public class Attempt {
+    /**
+     * 尝试编号
+     */
+    private final int num;
+    /**
+     * Chat生成器
+     */
+    private final ChatGenerator generator;
+    /**
+     * 提示生成器
+     */
+    private final PromptConstructorImpl pc;
+    /**
+     * 修复器
+     */
+    private final RepairImpl repair;
+    /**
+     * 已完成的轮次数
+     */
+    private int rounds = 0;
+    /**
+     * 是否生成成功
+     */
+    private boolean success = false;
+
+    public PromptInfo getPromptInfo() {
+        return pc.getPromptInfo();
+    }
+
+    /**
+     * 获取最近一轮的记录
+     *
+     * @return 轮次记录，尚未开始时返回null
+     */
+    public RoundRecord getLastRecord() {
+        if (getPromptInfo().getRecords().isEmpty()) {
+            return null;
+        }
+        return getPromptInfo().getRecords().get(getPromptInfo().getRecords().size() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "attempt" + num + " round " + rounds;
+    }
+}
@@ -0,0 +1,65 @@
+package zju.cst.aces.runner;
+
+import zju.cst.aces.api.config.Config;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 生成预算，限制一次运行消耗的大模型token数和生成时长。预算用完后不再开始新的方法和轮次，进行中的轮次照常完成；
+ * 配合优先级调度策略，预算用在单位成本收益最高的方法上。启用任务日志时，因预算停止的方法和尝试不记为完成，
+ * 下次运行继续。分片执行时每个工作进程各自计算预算。
+ */
+public class Budget {
+    private static Budget shared;
+
+    private final long tokenBudget;
+    private final long deadline;
+    private final AtomicLong spentTokens = new AtomicLong();
+    private final AtomicBoolean reported = new AtomicBoolean(false);
+
+    private Budget(long tokenBudget, long timeBudgetMinutes) {
+        this.tokenBudget = tokenBudget;
+        this.deadline = timeBudgetMinutes > 0 ? System.currentTimeMillis() + timeBudgetMinutes * 60_000 : Long.MAX_VALUE;
+    }
+
+    /**
+     * 获取共享预算，首次调用时开始计时
+     *
+     * @param config 配置对象
+     * @return 预算
+     */
+    public static synchronized Budget of(Config config) {
+        if (shared == null) {
+            shared = new Budget(config.getTokenBudget(), config.getTimeBudget());
+        }
+        return shared;
+    }
+
+    /**
+     * 记录消耗的token数
+     *
+     * @param tokens 提示和响应的token数
+     */
+    public void spend(long tokens) {
+        spentTokens.addAndGet(tokens);
+    }
+
+    public long getSpentTokens() {
+        return spentTokens.get();
+    }
+
+    /**
+     * 预算是否已用完，首次用完时记录日志
+     *
+     * @param config 配置对象
+     * @return 是否已用完
+     */
+    public boolean isExhausted(Config config) {
+        boolean exhausted = (tokenBudget > 0 && spentTokens.get() >= tokenBudget) || System.currentTimeMillis() >= deadline;
+        if (exhausted && reported.compareAndSet(false, true)) {
+            config.getLog().warn("Generation budget exhausted after " + spentTokens.get() + " tokens, skipping the remaining methods");
+        }
+        return exhausted;
+    }
+}
@@ -3,13 +3,11 @@ package zju.cst.aces.runner;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.api.config.Config;
+import zju.cst.aces.graph.DependencyScheduler;
 import zju.cst.aces.util.Counter;
 import zju.cst.aces.util.TestClassMerger;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
@@ -21,10 +19,6 @@ public class ClassRunner extends AbstractRunner {
      * 类信息
      */
     public ClassInfo classInfo;
-    /**
-     * 信息目录
-     */
-    public File infoDir;
     /**
      * 索引
      */
@@ -38,12 +32,10 @@ public class ClassRunner extends AbstractRunner {
      */
     public ClassRunner(Config config, String fullClassName) throws IOException {
         super(config, fullClassName);
-        infoDir = config.getParseOutput().resolve(fullClassName.replace(".", File.separator)).toFile();
-        if (!infoDir.isDirectory()) {
-            config.getLog().warn("Error: " + fullClassName + " no parsed info found");
+        classInfo = getClassInfo(config, fullClassName);
+        if (classInfo == null) {
+            throw new IOException("No parsed info found for " + fullClassName);
         }
-        File classInfoFile = new File(infoDir + File.separator + "class.json");
-        classInfo = GSON.fromJson(Files.readString(classInfoFile.toPath(), StandardCharsets.UTF_8), ClassInfo.class);
     }
     /**
      * 开始执行测试生成
@@ -55,7 +47,7 @@ public class ClassRunner extends AbstractRunner {
         if (config.isEnableMultithreading() == true) {
             methodJob();
         } else {
-            for (String mSig : classInfo.methodSigs.keySet()) {
+            for (String mSig : DependencyScheduler.orderMethods(config, classInfo)) {
                 MethodInfo methodInfo = getMethodInfo(config, classInfo, mSig);
                 if (!Counter.filter(methodInfo)) {
                     config.getLog().info("Skip method: " + mSig + " in class: " + fullClassName);
@@ -67,14 +59,32 @@ public class ClassRunner extends AbstractRunner {
         if (config.isEnableMerge()) {
             new TestClassMerger(config, fullClassName).mergeWithSuite();
         }
+        if (config.isEnableJournal() && isMethodsFinished()) {
+            JobJournal.of(config).classFinished(fullClassName);
+        }
+    }
+    /**
+     * 类中所有待生成的方法是否都已在任务日志中记录完成
+     *
+     * @return 是否全部完成
+     * @throws IOException IO异常
+     */
+    private boolean isMethodsFinished() throws IOException {
+        JobJournal journal = JobJournal.of(config);
+        for (String mSig : classInfo.methodSigs.keySet()) {
+            MethodInfo methodInfo = getMethodInfo(config, classInfo, mSig);
+            if (methodInfo != null && Counter.filter(methodInfo) && !journal.isMethodFinished(fullClassName, mSig)) {
+                return false;
+            }
+        }
+        return true;
     }
     /**
      * 执行方法任务
      */
     public void methodJob() {
-        ExecutorService executor = Executors.newFixedThreadPool(config.getMethodThreads());
-        List<Future<String>> futures = new ArrayList<>();
-        for (String mSig : classInfo.methodSigs.keySet()) {
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (String mSig : DependencyScheduler.orderMethods(config, classInfo)) {
             Callable<String> callable = new Callable<String>() {
                 @Override
                 public String call() throws Exception {
@@ -89,25 +99,11 @@ public class ClassRunner extends AbstractRunner {
                     return "Processed " + mSig;
                 }
             };
-            Future<String> future = executor.submit(callable);
-            futures.add(future);
+            tasks.add(callable);
         }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                executor.shutdownNow();
-            }
-        });
-
-        for (Future<String> future : futures) {
-            try {
-                String result = future.get();
-                System.out.println(result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
+        for (String result : Scheduler.of(config).invokeAll(tasks)) {
+            System.out.println(result);
         }
-
-        executor.shutdown();
     }
 }
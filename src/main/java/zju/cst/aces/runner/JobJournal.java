@@ -0,0 +1,336 @@
+package zju.cst.aces.runner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.RoundRecord;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任务日志，预写式记录项目运行中各类、方法、尝试的完成状态以及每次尝试已完成的轮次，JVM意外退出后重新运行时
+ * 跳过已完成的类和方法，未完成的尝试从最后完成的轮次之后继续，已付费的大模型调用不必重做。
+ * <p>
+ * 日志文件位于tmpOutput下，每行一条JSON记录，只追加不修改。记录先写入内存缓冲，在检查点（每轮、每次尝试、
+ * 每个方法和类结束时）批量写入文件并fsync；并发的尝试同时到达检查点时共用一次fsync。打开日志时回放全部记录，
+ * 丢弃写了一半的末行，并把已完成方法的轮次记录压缩掉后原子替换原文件。删除日志文件即可从头开始。
+ * <p>
+ * 恢复的尝试重建已完成轮次的记录、最近生成的测试代码和错误信息；各轮之间累积的正确测试方法不写入日志，
+ * 在恢复后的轮次中重新收集。
+ */
+public class JobJournal {
+    public static final String JOURNAL_FILE = "journal.log";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Map<Path, JobJournal> JOURNALS = new ConcurrentHashMap<>();
+    private static final JobJournal DISABLED = new JobJournal(null);
+
+    private enum Kind {
+        ROUND,
+        ATTEMPT,
+        METHOD,
+        CLASS
+    }
+
+    private static class Entry {
+        Kind kind;
+        String key;
+        boolean success;
+        RoundRecord record;
+
+        Entry(Kind kind, String key) {
+            this.kind = kind;
+            this.key = key;
+        }
+    }
+
+    private final Path journalPath;
+    private final Set<String> finishedClasses = ConcurrentHashMap.newKeySet();
+    private final Set<String> finishedMethods = ConcurrentHashMap.newKeySet();
+    private final Map<String, Boolean> finishedAttempts = new ConcurrentHashMap<>();
+    private final Map<String, List<RoundRecord>> rounds = new ConcurrentHashMap<>();
+    private final StringBuilder pending = new StringBuilder();
+    private final Object writeLock = new Object();
+    private FileChannel channel;
+    private long appended = 0;
+    private long durable = 0;
+
+    private JobJournal(Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * 获取项目的共享任务日志，首次调用时回放日志文件
+     *
+     * @param config 配置对象
+     * @return 任务日志，未启用时返回不记录任何内容的日志
+     */
+    public static JobJournal of(Config config) {
+        if (!config.isEnableJournal()) {
+            return DISABLED;
+        }
+        // 分片执行时每个工作进程写自己的日志，重启的工作进程从自己的日志继续
+        String worker = ShardCoordinator.currentWorker();
+        String fileName = worker == null ? JOURNAL_FILE : "journal-" + worker + ".log";
+        return JOURNALS.computeIfAbsent(config.getTmpOutput().resolve(fileName).toAbsolutePath().normalize(), path -> {
+            JobJournal journal = new JobJournal(path);
+            journal.open();
+            int done = journal.finishedMethods.size();
+            if (done > 0 || !journal.rounds.isEmpty()) {
+                config.getLog().info("Resuming from journal " + path + ": " + journal.finishedClasses.size()
+                        + " classes and " + done + " methods finished, " + journal.rounds.size() + " attempts in progress");
+            }
+            return journal;
+        });
+    }
+
+    /**
+     * 写入所有日志中尚未落盘的记录并关闭文件
+     */
+    public static void closeAll() {
+        for (JobJournal journal : JOURNALS.values()) {
+            journal.close();
+        }
+        JOURNALS.clear();
+    }
+
+    public boolean isClassFinished(String fullClassName) {
+        return finishedClasses.contains(fullClassName);
+    }
+
+    public boolean isMethodFinished(String fullClassName, String methodSig) {
+        return finishedMethods.contains(methodKey(fullClassName, methodSig));
+    }
+
+    /**
+     * 已结束的尝试的结果
+     *
+     * @return 是否生成成功，尝试未结束时返回null
+     */
+    public Boolean getAttemptResult(String fullClassName, String methodSig, int num) {
+        return finishedAttempts.get(attemptKey(fullClassName, methodSig, num));
+    }
+
+    /**
+     * 未结束的尝试已完成的轮次记录，按轮次排列
+     */
+    public List<RoundRecord> getRounds(String fullClassName, String methodSig, int num) {
+        List<RoundRecord> records = rounds.get(attemptKey(fullClassName, methodSig, num));
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        synchronized (records) {
+            return new ArrayList<>(records);
+        }
+    }
+
+    public void roundFinished(String fullClassName, String methodSig, int num, RoundRecord record) {
+        if (journalPath == null || record == null) {
+            return;
+        }
+        Entry entry = new Entry(Kind.ROUND, attemptKey(fullClassName, methodSig, num));
+        entry.record = record;
+        checkpoint(append(entry));
+    }
+
+    public void attemptFinished(String fullClassName, String methodSig, int num, boolean success) {
+        if (journalPath == null) {
+            return;
+        }
+        Entry entry = new Entry(Kind.ATTEMPT, attemptKey(fullClassName, methodSig, num));
+        entry.success = success;
+        checkpoint(append(entry));
+    }
+
+    public void methodFinished(String fullClassName, String methodSig) {
+        if (journalPath == null) {
+            return;
+        }
+        checkpoint(append(new Entry(Kind.METHOD, methodKey(fullClassName, methodSig))));
+    }
+
+    public void classFinished(String fullClassName) {
+        if (journalPath == null) {
+            return;
+        }
+        checkpoint(append(new Entry(Kind.CLASS, fullClassName)));
+    }
+
+    private static String methodKey(String fullClassName, String methodSig) {
+        return fullClassName + "#" + methodSig;
+    }
+
+    private static String attemptKey(String fullClassName, String methodSig, int num) {
+        return methodKey(fullClassName, methodSig) + "#" + num;
+    }
+
+    private static String methodKeyOf(String attemptKey) {
+        return attemptKey.substring(0, attemptKey.lastIndexOf('#'));
+    }
+
+    /**
+     * 应用记录并写入缓冲
+     *
+     * @return 记录的序号
+     */
+    private synchronized long append(Entry entry) {
+        apply(entry);
+        pending.append(GSON.toJson(entry)).append('\n');
+        return ++appended;
+    }
+
+    /**
+     * 确保序号不大于seq的记录都已落盘。其他线程的检查点已覆盖时直接返回，否则把缓冲中的全部记录一次写入并fsync
+     */
+    private void checkpoint(long seq) {
+        synchronized (writeLock) {
+            if (durable >= seq) {
+                return;
+            }
+            String batch;
+            long last;
+            synchronized (this) {
+                batch = pending.toString();
+                pending.setLength(0);
+                last = appended;
+            }
+            try {
+                write(batch);
+                channel.force(false);
+            } catch (IOException e) {
+                throw new RuntimeException("In JobJournal.checkpoint: " + e);
+            }
+            durable = last;
+        }
+    }
+
+    private void write(String batch) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batch.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void close() {
+        synchronized (writeLock) {
+            long last;
+            synchronized (this) {
+                last = appended;
+            }
+            checkpoint(last);
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("In JobJournal.close: " + e);
+            }
+        }
+    }
+
+    private void apply(Entry entry) {
+        switch (entry.kind) {
+            case ROUND:
+                List<RoundRecord> records = rounds.computeIfAbsent(entry.key, key -> new ArrayList<>());
+                synchronized (records) {
+                    // 只保留连续的轮次，重复写入的同一轮以后写入的为准
+                    while (records.size() > entry.record.getRound()) {
+                        records.remove(records.size() - 1);
+                    }
+                    if (records.size() == entry.record.getRound()) {
+                        records.add(entry.record);
+                    }
+                }
+                break;
+            case ATTEMPT:
+                finishedAttempts.put(entry.key, entry.success);
+                rounds.remove(entry.key);
+                break;
+            case METHOD:
+                finishedMethods.add(entry.key);
+                break;
+            case CLASS:
+                finishedClasses.add(entry.key);
+                break;
+        }
+    }
+
+    /**
+     * 回放日志文件，之后压缩：已完成方法的尝试只保留结果，写了一半的末行被丢弃
+     */
+    private void open() {
+        try {
+            Files.createDirectories(journalPath.getParent());
+            if (!Files.exists(journalPath)) {
+                return;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        Entry entry = GSON.fromJson(line, Entry.class);
+                        if (entry != null && entry.kind != null && entry.key != null
+                                && (entry.kind != Kind.ROUND || entry.record != null)) {
+                            apply(entry);
+                        }
+                    } catch (JsonParseException e) {
+                        // 进程在写入时退出留下的不完整记录
+                    }
+                }
+            }
+            compact();
+        } catch (IOException e) {
+            throw new RuntimeException("In JobJournal.open: " + e);
+        }
+    }
+
+    private void compact() throws IOException {
+        rounds.keySet().removeIf(key -> finishedAttempts.containsKey(key) || finishedMethods.contains(methodKeyOf(key)));
+        finishedAttempts.keySet().removeIf(key -> finishedMethods.contains(methodKeyOf(key)));
+        StringBuilder live = new StringBuilder();
+        for (String key : finishedClasses) {
+            live.append(GSON.toJson(new Entry(Kind.CLASS, key))).append('\n');
+        }
+        for (String key : finishedMethods) {
+            live.append(GSON.toJson(new Entry(Kind.METHOD, key))).append('\n');
+        }
+        for (Map.Entry<String, Boolean> attempt : finishedAttempts.entrySet()) {
+            Entry entry = new Entry(Kind.ATTEMPT, attempt.getKey());
+            entry.success = attempt.getValue();
+            live.append(GSON.toJson(entry)).append('\n');
+        }
+        for (Map.Entry<String, List<RoundRecord>> attempt : rounds.entrySet()) {
+            for (RoundRecord record : attempt.getValue()) {
+                Entry entry = new Entry(Kind.ROUND, attempt.getKey());
+                entry.record = record;
+                live.append(GSON.toJson(entry)).append('\n');
+            }
+        }
+        Path tmp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(live.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
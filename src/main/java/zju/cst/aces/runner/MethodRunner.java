@@ -12,8 +12,12 @@ import zju.cst.aces.api.impl.PromptConstructorImpl;
 import zju.cst.aces.api.impl.RepairImpl;
 import zju.cst.aces.api.impl.obfuscator.Obfuscator;
 import zju.cst.aces.dto.*;
+import zju.cst.aces.prompt.PromptGenerator;
+import zju.cst.aces.prompt.TOT;
+import zju.cst.aces.util.Cancellation;
 import zju.cst.aces.util.CodeExtractor;
 import zju.cst.aces.util.TestProcessor;
+import zju.cst.aces.util.TokenCounter;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -22,7 +26,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 /**
  * 方法执行器类，用于生成和验证单元测试方法。
@@ -32,6 +39,18 @@ public class MethodRunner extends ClassRunner {
      * 方法信息
      */
     public MethodInfo methodInfo;
+    /**
+     * 第0轮提示信息骨架，同一方法的所有尝试共享，每次尝试只替换测试名称
+     */
+    private PromptInfo promptInfoSkeleton;
+    /**
+     * 第0轮渲染后的消息，同一方法的所有尝试共享
+     */
+    private List<Message> initialMessages;
+    /**
+     * 第0轮消息的token数
+     */
+    private int initialTokenCount;
     /**
      * 构造方法
      *
@@ -51,9 +70,23 @@ public class MethodRunner extends ClassRunner {
      */
     @Override
     public void start() throws IOException {
-        if (!config.isStopWhenSuccess() && config.isEnableMultithreading()) {
-            ExecutorService executor = Executors.newFixedThreadPool(config.getTestNumber());
-            List<Future<String>> futures = new ArrayList<>();
+        JobJournal journal = JobJournal.of(config);
+        if (journal.isMethodFinished(fullClassName, methodInfo.methodSignature)) {
+            config.getLog().info("Skip finished method: " + methodInfo.methodSignature + " in class: " + fullClassName);
+            return;
+        }
+        if (Budget.of(config).isExhausted(config)) {
+            config.getLog().info("Skip method: " + methodInfo.methodSignature + " in class: " + fullClassName + ", budget exhausted");
+            return;
+        }
+        // 有尝试异常退出时不记录方法完成，下次运行重做这些尝试
+        boolean complete = true;
+        if (config.isEnableTreeOfThought()) {
+            complete = startTreeSearch();
+        } else if (config.isStopWhenSuccess() && config.getSpeculativeAttempts() > 1 && config.getTestNumber() > 1) {
+            complete = startSpeculative();
+        } else if (!config.isStopWhenSuccess() && config.isEnableMultithreading()) {
+            List<Callable<String>> tasks = new ArrayList<>();
             for (int num = 0; num < config.getTestNumber(); num++) {
                 int finalNum = num;
                 Callable<String> callable = new Callable<String>() {
@@ -63,25 +96,13 @@ public class MethodRunner extends ClassRunner {
                         return "";
                     }
                 };
-                Future<String> future = executor.submit(callable);
-                futures.add(future);
+                tasks.add(callable);
             }
-            Runtime.getRuntime().addShutdownHook(new Thread() {
-                public void run() {
-                    executor.shutdownNow();
-                }
-            });
 
-            for (Future<String> future : futures) {
-                try {
-                    String result = future.get();
-                    System.out.println(result);
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
+            for (String result : Scheduler.of(config).invokeAll(tasks)) {
+                System.out.println(result);
+                complete &= result != null;
             }
-
-            executor.shutdown();
         } else {
             for (int num = 0; num < config.getTestNumber(); num++) {
                 if (startRounds(num) && config.isStopWhenSuccess()) {
@@ -89,7 +110,53 @@ public class MethodRunner extends ClassRunner {
                 }
             }
         }
+        // 因预算停止的尝试未结束，方法也不记为完成
+        if (complete && !Budget.of(config).isExhausted(config)) {
+            journal.methodFinished(fullClassName, methodInfo.methodSignature);
+        }
     }
+    /**
+     * 推测执行多个尝试：最多speculativeAttempts个尝试同时进行，任一尝试成功后取消其余进行中的尝试，
+     * 包括正在进行的大模型请求和等待中的编译执行，且不再开始新的尝试
+     *
+     * @return 是否所有尝试都正常结束或被取消
+     */
+    public boolean startSpeculative() {
+        int width = Math.min(config.getSpeculativeAttempts(), config.getTestNumber());
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean succeeded = new AtomicBoolean(false);
+        Set<Cancellation> running = ConcurrentHashMap.newKeySet();
+        List<Callable<Boolean>> lanes = new ArrayList<>();
+        for (int lane = 0; lane < width; lane++) {
+            lanes.add(() -> {
+                int num;
+                while (!succeeded.get() && (num = next.getAndIncrement()) < config.getTestNumber()) {
+                    Cancellation token = new Cancellation();
+                    running.add(token);
+                    // 另一尝试可能在检查之后、登记之前成功，此时它的取消遍历不到本尝试
+                    if (succeeded.get()) {
+                        token.cancel();
+                    }
+                    int finalNum = num;
+                    try {
+                        if (token.call(() -> startRounds(finalNum)) && succeeded.compareAndSet(false, true)) {
+                            running.forEach(other -> {
+                                if (other != token) {
+                                    other.cancel();
+                                }
+                            });
+                            return true;
+                        }
+                    } finally {
+                        running.remove(token);
+                    }
+                }
+                return false;
+            });
+        }
+        return !Scheduler.of(config).invokeAll(lanes).contains(null);
+    }
+
     /**
      * 开始执行测试生成的轮次
      *
@@ -98,6 +165,99 @@ public class MethodRunner extends ClassRunner {
      * @throws IOException IO异常
      */
     public boolean startRounds(final int num) throws IOException {
+        try {
+            return Scheduler.of(config).runAttempt(() -> runAttempt(num));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("In MethodRunner.startRounds: " + e);
+        }
+    }
+
+    /**
+     * 执行一次尝试的所有轮次
+     *
+     * @param num 尝试编号
+     * @return 是否生成成功
+     * @throws IOException IO异常
+     */
+    private boolean runAttempt(final int num) throws IOException {
+        JobJournal journal = JobJournal.of(config);
+        Boolean finished = journal.getAttemptResult(fullClassName, methodInfo.methodSignature, num);
+        if (finished != null) {
+            config.getLog().info("Skip finished attempt " + num + " for method < " + methodInfo.methodName + " >");
+            return finished;
+        }
+        Attempt attempt = prepareAttempt(num);
+        resume(attempt, journal.getRounds(fullClassName, methodInfo.methodSignature, num));
+        try {
+            for (int rounds = attempt.getRounds(); rounds < config.getMaxRounds(); rounds++) {
+                if (Budget.of(config).isExhausted(config)) {
+                    exportRecord(attempt.getPromptInfo(), classInfo, num);
+                    return false;
+                }
+                boolean success = runRound(attempt);
+                journal.roundFinished(fullClassName, methodInfo.methodSignature, num, attempt.getLastRecord());
+                if (success) {
+                    journal.attemptFinished(fullClassName, methodInfo.methodSignature, num, true);
+                    exportRecord(attempt.getPromptInfo(), classInfo, num);
+                    return true;
+                }
+            }
+            journal.attemptFinished(fullClassName, methodInfo.methodSignature, num, false);
+        } catch (CancellationException e) {
+            config.getLog().info("Attempt " + num + " for method < " + methodInfo.methodName + " > cancelled");
+            markCancelled(attempt);
+        }
+        exportRecord(attempt.getPromptInfo(), classInfo, num);
+        return false;
+    }
+
+    /**
+     * 从任务日志恢复尝试已完成的轮次：重建轮次记录，以及最近一轮生成的测试代码和错误信息，下一轮据此继续修复
+     *
+     * @param attempt 尝试状态
+     * @param records 已完成轮次的记录
+     */
+    private void resume(Attempt attempt, List<RoundRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        PromptInfo promptInfo = attempt.getPromptInfo();
+        for (RoundRecord record : records) {
+            promptInfo.addRecord(record);
+            if (record.isHasCode()) {
+                promptInfo.setUnitTest(record.getCode());
+            }
+            if (record.getErrorMsg() != null) {
+                promptInfo.setErrorMsg(record.getErrorMsg());
+            }
+        }
+        attempt.setRounds(records.size());
+        config.getLog().info("Resume attempt " + attempt.getNum() + " for method < " + methodInfo.methodName
+                + " > from round " + records.size());
+    }
+
+    /**
+     * 将尝试被取消时进行中的轮次标记为已取消
+     *
+     * @param attempt 尝试状态
+     */
+    private static void markCancelled(Attempt attempt) {
+        RoundRecord record = attempt.getLastRecord();
+        if (record != null) {
+            record.setCancelled(true);
+        }
+    }
+
+    /**
+     * 准备一次尝试：复用第0轮提示信息骨架并设置测试名称
+     *
+     * @param num 尝试编号
+     * @return 尝试状态
+     * @throws IOException IO异常
+     */
+    public Attempt prepareAttempt(final int num) throws IOException {
         String testName = className + separator + methodInfo.methodName + separator
                 + classInfo.methodSigs.get(methodInfo.methodSignature) + separator + num + separator + "Test";
         String fullTestName = fullClassName + separator + methodInfo.methodName + separator
@@ -109,11 +269,7 @@ public class MethodRunner extends ClassRunner {
         PromptConstructorImpl pc = new PromptConstructorImpl(config);
         RepairImpl repair = new RepairImpl(config, pc);
 
-        if (methodInfo.dependentMethods.size() > 0) {
-            pc.setPromptInfoWithDep(classInfo, methodInfo);
-        } else {
-            pc.setPromptInfoWithoutDep(classInfo, methodInfo);
-        }
+        pc.setPromptInfo(getPromptInfoSkeleton().copyForAttempt());
         pc.setFullTestName(fullTestName);
         pc.setTestName(testName);
 
@@ -121,23 +277,161 @@ public class MethodRunner extends ClassRunner {
         promptInfo.setFullTestName(fullTestName);
         Path savePath = config.getTestOutput().resolve(fullTestName.replace(".", File.separator) + ".java");
         promptInfo.setTestPath(savePath);
+        return new Attempt(num, generator, pc, repair);
+    }
+
+    /**
+     * 执行一次尝试的下一轮：第0轮生成，之后的轮次修复
+     *
+     * @param attempt 尝试状态
+     * @return 本轮是否生成成功
+     * @throws IOException IO异常
+     */
+    public boolean runRound(Attempt attempt) throws IOException {
+        int rounds = attempt.getRounds();
+        if (rounds == 0) {
+            config.getLog().info("Generating test for method < " + methodInfo.methodName + " > round " + rounds + " ...");
+        } else {
+            config.getLog().info("Fixing test for method < " + methodInfo.methodName + " > round " + rounds + " ...");
+        }
+        PromptInfo promptInfo = attempt.getPromptInfo();
+        promptInfo.addRecord(new RoundRecord(rounds));
+        RoundRecord record = promptInfo.getRecords().get(rounds);
+        record.setAttempt(attempt.getNum());
+        boolean success = generateTest(attempt.getGenerator(), attempt.getPc(), attempt.getRepair(), record);
+        attempt.setRounds(rounds + 1);
+        attempt.setSuccess(success);
+        ShardCoordinator.progress();
+        return success;
+    }
+
+    /**
+     * 以思维树方式生成测试：所有尝试作为分支经共享调度器并发推进，每轮按语法与编译结果打分，
+     * 只保留得分最高的分支继续修复，任一分支成功后通过取消令牌取消其余分支；每次扩展前检查预算，耗尽时停止搜索。
+     * 每轮和每个结束的分支记入任务日志，重新运行时跳过已结束的分支，其余分支从已完成的轮次继续
+     *
+     * @return 搜索是否正常结束：没有分支异常退出，也未因预算耗尽停止
+     * @throws IOException IO异常
+     */
+    public boolean startTreeSearch() throws IOException {
+        JobJournal journal = JobJournal.of(config);
+        List<Attempt> attempts = new ArrayList<>();
+        for (int num = 0; num < config.getTestNumber(); num++) {
+            Boolean finished = journal.getAttemptResult(fullClassName, methodInfo.methodSignature, num);
+            if (finished != null) {
+                config.getLog().info("Skip finished attempt " + num + " for method < " + methodInfo.methodName + " >");
+                if (finished) {
+                    return true;
+                }
+                continue;
+            }
+            Attempt attempt = prepareAttempt(num);
+            resume(attempt, journal.getRounds(fullClassName, methodInfo.methodSignature, num));
+            attempts.add(attempt);
+        }
+        Scheduler scheduler = Scheduler.of(config);
+        TOT<Attempt> tot = new TOT<>(attempts, scheduler::invokeAll)
+                .beamWidth(config.getTotBeamWidth())
+                .maxDepth(config.getMaxRounds())
+                .scorer(MethodRunner::scoreAttempt)
+                .goal(Attempt::isSuccess)
+                .stopWhen(() -> Budget.of(config).isExhausted(config));
+        tot.search((attempt, depth) -> scheduler.runAttempt(() -> {
+            // 恢复的分支可能已用完轮次
+            if (attempt.getRounds() >= config.getMaxRounds()) {
+                return null;
+            }
+            boolean success = runRound(attempt);
+            journal.roundFinished(fullClassName, methodInfo.methodSignature, attempt.getNum(), attempt.getLastRecord());
+            if (success) {
+                journal.attemptFinished(fullClassName, methodInfo.methodSignature, attempt.getNum(), true);
+            }
+            return attempt;
+        }));
+        // 被剪枝或用完轮次的分支已结束；被取消、异常退出或因预算停止的分支下次继续
+        for (Attempt attempt : attempts) {
+            if (!attempt.isSuccess() && attempt.getRounds() >= config.getMaxRounds()) {
+                journal.attemptFinished(fullClassName, methodInfo.methodSignature, attempt.getNum(), false);
+            }
+        }
+        for (Attempt attempt : tot.getPruned()) {
+            if (attempt.getRounds() < config.getMaxRounds()) {
+                journal.attemptFinished(fullClassName, methodInfo.methodSignature, attempt.getNum(), false);
+            }
+        }
+        if (tot.isStopped()) {
+            config.getLog().info("Tree search for method < " + methodInfo.methodName + " > stopped, budget exhausted");
+        }
+        tot.getCancelled().forEach(MethodRunner::markCancelled);
+        tot.getFailures().forEach((attempt, e) -> config.getLog().error("Attempt " + attempt.getNum()
+                + " for method < " + methodInfo.methodName + " > failed: " + e));
+        for (Attempt attempt : attempts) {
+            if (!attempt.getPromptInfo().getRecords().isEmpty()) {
+                exportRecord(attempt.getPromptInfo(), classInfo, attempt.getNum());
+            }
+        }
+        return tot.getFailures().isEmpty() && !tot.isStopped();
+    }
 
-        for (int rounds = 0; rounds < config.getMaxRounds(); rounds++) {
-            if (rounds == 0) {
-                config.getLog().info("Generating test for method < " + methodInfo.methodName + " > round " + rounds + " ...");
+    /**
+     * 为尝试的最近一轮打分：提取出代码、无语法错误、通过编译依次加分，错误越多得分越低
+     *
+     * @param attempt 尝试状态
+     * @return 分数
+     */
+    public static double scoreAttempt(Attempt attempt) {
+        RoundRecord record = attempt.getLastRecord();
+        if (record == null || !record.isHasCode()) {
+            return 0;
+        }
+        double score = 1;
+        if (record.getResponse() != null && !new CodeExtractor(record.getResponse()).getHasSyntacticError()) {
+            score += 1;
+        }
+        TestMessage errorMsg = attempt.getPromptInfo().getErrorMsg();
+        if (errorMsg != null) {
+            int errors = errorMsg.getErrorMessage() == null ? 0 : Math.min(errorMsg.getErrorMessage().size(), 10);
+            if (errorMsg.getErrorType() == TestMessage.ErrorType.RUNTIME_ERROR) {
+                score += 2;
+            }
+            score -= 0.1 * errors;
+        }
+        return score;
+    }
+
+    /**
+     * 获取第0轮提示信息骨架，仅在第一次尝试时构建
+     *
+     * @return 提示信息骨架
+     * @throws IOException IO异常
+     */
+    public synchronized PromptInfo getPromptInfoSkeleton() throws IOException {
+        if (promptInfoSkeleton == null) {
+            if (methodInfo.dependentMethods.size() > 0) {
+                promptInfoSkeleton = generatePromptInfoWithDep(config, classInfo, methodInfo);
             } else {
-                config.getLog().info("Fixing test for method < " + methodInfo.methodName + " > round " + rounds + " ...");
+                promptInfoSkeleton = generatePromptInfoWithoutDep(config, classInfo, methodInfo);
             }
-            promptInfo.addRecord(new RoundRecord(rounds));
-            RoundRecord record = promptInfo.getRecords().get(rounds);
-            record.setAttempt(num);
-            if (generateTest(generator, pc, repair, record)) {
-                exportRecord(promptInfo, classInfo, record.getAttempt());
-                return true;
+        }
+        return promptInfoSkeleton;
+    }
+
+    /**
+     * 获取第0轮的消息，仅渲染一次。第0轮提示与测试名称无关，因此可在所有尝试间复用
+     *
+     * @param promptInfo 提示信息
+     * @return 消息列表
+     * @throws IOException IO异常
+     */
+    private synchronized List<Message> getInitialMessages(PromptInfo promptInfo) throws IOException {
+        if (initialMessages == null) {
+            initialMessages = new PromptGenerator(config).generateMessages(promptInfo);
+            initialTokenCount = 0;
+            for (Message m : initialMessages) {
+                initialTokenCount += TokenCounter.countToken(m.getContent());
             }
         }
-        exportRecord(pc.getPromptInfo(), classInfo, num);
-        return false;
+        return new ArrayList<>(initialMessages);
     }
 
     /**
@@ -158,8 +452,16 @@ public class MethodRunner extends ClassRunner {
             obfuscator.obfuscatePromptInfo(obfuscatedPromptInfo);
         }
 
-        List<Message> prompt = promptGenerator.generateMessages(obfuscatedPromptInfo);
-        if (isExceedMaxTokens(config, prompt)) {
+        List<Message> prompt;
+        int promptTokens;
+        if (promptInfo.getErrorMsg() == null && !config.isEnableObfuscate()) {
+            prompt = Pipeline.of(config).call(Pipeline.Stage.BUILD, () -> getInitialMessages(obfuscatedPromptInfo));
+            promptTokens = initialTokenCount;
+        } else {
+            prompt = Pipeline.of(config).call(Pipeline.Stage.BUILD, () -> new PromptGenerator(config).generateMessages(obfuscatedPromptInfo));
+            promptTokens = countTokens(prompt);
+        }
+        if (promptTokens > config.maxPromptTokens) {
             config.getLog().error("Exceed max prompt tokens: " + methodInfo.methodName + " Skipped.");
             return false;
         }
@@ -167,6 +469,7 @@ public class MethodRunner extends ClassRunner {
 
         Response response = generator.chat(config, prompt);
         String content = generator.getContentByResponse(response);
+        Budget.of(config).spend(promptTokens + TokenCounter.countToken(content));
         config.getLog().debug("[Response]:\n" + content);
         String code = generator.extractCodeByContent(content);
 
@@ -269,7 +572,9 @@ public class MethodRunner extends ClassRunner {
         // Compilation
         Path compilationErrorPath = config.getErrorOutput().resolve(testName + "_CompilationError_" + rounds + ".txt");
         Path executionErrorPath = config.getErrorOutput().resolve(testName + "_ExecutionError_" + rounds + ".txt");
-        boolean compileResult = config.getValidator().semanticValidate(code, testName, compilationErrorPath, promptInfo);
+        Pipeline pipeline = Pipeline.of(config);
+        String compileCode = code;
+        boolean compileResult = pipeline.run(Pipeline.Stage.COMPILE, () -> config.getValidator().semanticValidate(compileCode, testName, compilationErrorPath, promptInfo));
         if (!compileResult) {
             config.getLog().info("Test for method < " + promptInfo.getMethodInfo().getMethodName() + " > compilation failed round " + rounds);
             return false;
@@ -281,7 +586,7 @@ public class MethodRunner extends ClassRunner {
         }
 
         // Execution
-        TestExecutionSummary summary = config.getValidator().execute(fullTestName);
+        TestExecutionSummary summary = pipeline.run(Pipeline.Stage.EXECUTE, () -> config.getValidator().execute(fullTestName));
         if (summary.getTestsSucceededCount() == 0) {
             config.getLog().info("Test for method < " + promptInfo.getMethodInfo().getMethodName() + " > execution failed round " + rounds);
             return false;
@@ -292,8 +597,8 @@ public class MethodRunner extends ClassRunner {
             // Remove errors successfully, recompile and re-execute test
             if (testProcessed != null) {
                 config.getLog().debug("[Original Test]:\n" + code);
-                if (config.getValidator().semanticValidate(testProcessed, testName, compilationErrorPath, null)) {
-                    if (config.getValidator().runtimeValidate(fullTestName)) {
+                if (pipeline.run(Pipeline.Stage.COMPILE, () -> config.getValidator().semanticValidate(testProcessed, testName, compilationErrorPath, null))) {
+                    if (pipeline.run(Pipeline.Stage.EXECUTE, () -> config.getValidator().runtimeValidate(fullTestName))) {
                         exportTest(testProcessed, savePath);
                         config.getLog().debug("[Processed Test]:\n" + testProcessed);
                         config.getLog().info("Processed test for method < " + promptInfo.getMethodInfo().getMethodName() + " > generated successfully round " + rounds);
@@ -0,0 +1,182 @@
+package zju.cst.aces.runner;
+
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.util.Cancellation;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 生成流水线，一次尝试的构建提示、调用大模型、编译、执行各阶段分别交给按其资源划分大小的执行器。
+ * <p>
+ * 调用大模型的阶段按maxThreads设置线程数，其余CPU密集的阶段按CPU核数设置线程数。每个阶段的等待队列有界，
+ * 队列满时提交方阻塞等待，压力沿流水线向上游传递，因此既能让大模型接口保持满负荷，又不会让编译挤占全部CPU。
+ * 未启用流水线时各阶段直接在尝试线程中执行；虚拟线程模式下只有编译和执行阶段交给平台线程。
+ * <p>
+ * 每个阶段开始前检查当前尝试是否已取消，尝试的取消令牌随工作传递到阶段线程，取消时等待中的阶段工作也被取消。
+ */
+public class Pipeline {
+    public enum Stage {
+        /**
+         * 构建提示
+         */
+        BUILD,
+        /**
+         * 调用大模型
+         */
+        INFER,
+        /**
+         * 编译测试
+         */
+        COMPILE,
+        /**
+         * 执行测试
+         */
+        EXECUTE
+    }
+
+    private static final Pipeline INLINE = new Pipeline(new EnumMap<>(Stage.class));
+    private static Pipeline shared;
+
+    private final Map<Stage, ThreadPoolExecutor> executors;
+
+    private Pipeline(Map<Stage, ThreadPoolExecutor> executors) {
+        this.executors = executors;
+    }
+
+    /**
+     * 获取共享流水线，首次调用时按配置创建各阶段的执行器
+     *
+     * @param config 配置对象
+     * @return 流水线，未启用时返回在当前线程执行各阶段的流水线
+     */
+    public static Pipeline of(Config config) {
+        // 在持有流水线的锁之前获取调度器，与调度器关闭时的加锁顺序一致
+        boolean virtual = Scheduler.of(config).isVirtual();
+        if (!config.isEnablePipeline() && !virtual) {
+            return INLINE;
+        }
+        synchronized (Pipeline.class) {
+            return shared != null ? shared : create(config, virtual);
+        }
+    }
+
+    private static Pipeline create(Config config, boolean virtual) {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        Map<Stage, ThreadPoolExecutor> executors = new EnumMap<>(Stage.class);
+        if (!virtual) {
+            // 虚拟线程等待构建和响应的开销很小，不需要单独的执行器
+            executors.put(Stage.BUILD, newStageExecutor(Stage.BUILD, cpus));
+            executors.put(Stage.INFER, newStageExecutor(Stage.INFER, Math.max(1, config.getMaxThreads())));
+        }
+        executors.put(Stage.COMPILE, newStageExecutor(Stage.COMPILE, cpus));
+        executors.put(Stage.EXECUTE, newStageExecutor(Stage.EXECUTE, cpus));
+        shared = new Pipeline(executors);
+        return shared;
+    }
+
+    /**
+     * 关闭共享流水线，之后的调用会重新创建
+     */
+    public static synchronized void shutdown() {
+        if (shared != null) {
+            shared.executors.values().forEach(ExecutorService::shutdownNow);
+            shared = null;
+        }
+    }
+
+    /**
+     * 在指定阶段执行工作并等待结果
+     *
+     * @param stage 阶段
+     * @param work  工作
+     * @return 工作结果
+     */
+    public <T> T run(Stage stage, Supplier<T> work) {
+        Cancellation.checkpoint();
+        ThreadPoolExecutor executor = executors.get(stage);
+        if (executor == null) {
+            return work.get();
+        }
+        try {
+            return await(executor.submit(Cancellation.propagate(work::get)));
+        } catch (IOException e) {
+            throw new RuntimeException("In Pipeline.run: " + e);
+        }
+    }
+
+    /**
+     * 在指定阶段执行可能抛出IO异常的工作并等待结果
+     *
+     * @param stage 阶段
+     * @param work  工作
+     * @return 工作结果
+     * @throws IOException 工作抛出的IO异常
+     */
+    public <T> T call(Stage stage, Callable<T> work) throws IOException {
+        Cancellation.checkpoint();
+        ThreadPoolExecutor executor = executors.get(stage);
+        if (executor == null) {
+            try {
+                return work.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("In Pipeline.call: " + e);
+            }
+        }
+        return await(executor.submit(Cancellation.propagate(work)));
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        Cancellation.Registration registration = Cancellation.onCancel(() -> future.cancel(true));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In Pipeline.await: " + e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("In Pipeline.await: " + cause);
+        } finally {
+            registration.close();
+        }
+    }
+
+    /**
+     * 固定线程数、有界队列的阶段执行器，队列满时提交线程阻塞直到有空位
+     */
+    private static ThreadPoolExecutor newStageExecutor(Stage stage, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + stage.name().toLowerCase() + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), factory, (runnable, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Pipeline stage " + stage + " is shut down");
+            }
+            try {
+                pool.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+}
@@ -0,0 +1,175 @@
+package zju.cst.aces.runner;
+
+import zju.cst.aces.api.config.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 全局任务调度器，项目、类、方法、尝试各层任务共享同一个工作窃取线程池。
+ * <p>
+ * 上层任务等待子任务时会帮助执行池中的任务而不是占住线程空等，因此线程总数受maxThreads约束，
+ * 不再随层级嵌套成倍增长；同时进行的尝试数也不超过maxThreads。整个进程只有一个线程池和一个关闭钩子。
+ * <p>
+ * 启用虚拟线程模式且JVM支持时（JDK 21+），各层任务改为每个任务一个虚拟线程，等待大模型响应不占用平台线程，
+ * 同时进行的尝试数不再受maxThreads限制；编译和执行测试等CPU密集的工作仍由{@link Pipeline}交给平台线程。
+ */
+public class Scheduler {
+    private static Scheduler shared;
+    private static boolean hookRegistered = false;
+
+    private final ForkJoinPool pool;
+    private final Semaphore attemptPermits;
+    private final ExecutorService virtualThreads;
+
+    private Scheduler(int maxThreads, ExecutorService virtualThreads) {
+        // FIFO本地队列，任务大致按提交顺序（即调度策略给出的顺序）执行
+        this.pool = new ForkJoinPool(maxThreads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.attemptPermits = new Semaphore(maxThreads);
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * 获取共享调度器，首次调用时按配置的最大线程数创建
+     *
+     * @param config 配置对象
+     * @return 调度器
+     */
+    public static synchronized Scheduler of(Config config) {
+        if (shared == null || shared.pool.isShutdown()) {
+            ExecutorService virtualThreads = null;
+            if (config.isEnableVirtualThreads()) {
+                virtualThreads = newVirtualThreadExecutor();
+                if (virtualThreads == null) {
+                    config.getLog().warn("Virtual threads need JDK 21 or later, running on platform threads");
+                }
+            }
+            shared = new Scheduler(Math.max(1, config.getMaxThreads()), virtualThreads);
+            if (!hookRegistered) {
+                Runtime.getRuntime().addShutdownHook(new Thread(Scheduler::shutdown));
+                hookRegistered = true;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * 关闭共享调度器，取消尚未执行的任务，之后的调用会重新创建调度器
+     */
+    public static synchronized void shutdown() {
+        if (shared != null) {
+            shared.pool.shutdownNow();
+            if (shared.virtualThreads != null) {
+                shared.virtualThreads.shutdownNow();
+            }
+            shared = null;
+        }
+        Pipeline.shutdown();
+        JobJournal.closeAll();
+    }
+
+    /**
+     * 是否在虚拟线程上执行任务
+     *
+     * @return 是否为虚拟线程模式
+     */
+    public boolean isVirtual() {
+        return virtualThreads != null;
+    }
+
+    /**
+     * 并发执行一组子任务并按提交顺序返回结果。在调度器线程中调用时，当前线程在等待期间帮助执行子任务。
+     * 单个任务失败不影响其他任务，其结果为null
+     *
+     * @param tasks 子任务列表
+     * @return 结果列表
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        if (virtualThreads != null) {
+            return invokeAllVirtual(tasks);
+        }
+        List<ForkJoinTask<T>> forked = new ArrayList<>(tasks.size());
+        boolean inPool = ForkJoinTask.getPool() == pool;
+        for (Callable<T> task : tasks) {
+            ForkJoinTask<T> forkJoinTask = ForkJoinTask.adapt(task);
+            if (inPool) {
+                forkJoinTask.fork();
+            } else {
+                pool.execute(forkJoinTask);
+            }
+            forked.add(forkJoinTask);
+        }
+        List<T> results = new ArrayList<>(forked.size());
+        for (ForkJoinTask<T> forkJoinTask : forked) {
+            try {
+                results.add(forkJoinTask.join());
+            } catch (CancellationException e) {
+                results.add(null);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 在全局尝试并发限制内执行一次尝试
+     *
+     * @param attempt 尝试任务
+     * @return 尝试结果
+     * @throws Exception 尝试抛出的异常
+     */
+    public <T> T runAttempt(Callable<T> attempt) throws Exception {
+        if (virtualThreads != null) {
+            return attempt.call();
+        }
+        attemptPermits.acquire();
+        try {
+            return attempt.call();
+        } finally {
+            attemptPermits.release();
+        }
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    private <T> List<T> invokeAllVirtual(List<Callable<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(virtualThreads.submit(task));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                results.add(null);
+            } catch (CancellationException e) {
+                results.add(null);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 通过反射创建每个任务一个虚拟线程的执行器，以便在JDK 21以下编译和运行
+     *
+     * @return 执行器，JVM不支持虚拟线程时返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
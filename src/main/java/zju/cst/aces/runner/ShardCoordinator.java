@@ -0,0 +1,326 @@
+package zju.cst.aces.runner;
+
+import zju.cst.aces.api.Task;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.api.impl.ValidatorImpl;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.parser.ParseStore;
+import zju.cst.aces.util.TestClassMerger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多进程分片执行的协调进程，把项目的类划分为分片放入{@link ShardQueue}，启动workers个本地工作进程领取执行，
+ * 监视工作进程，汇总结果并统一合并测试套件。
+ * <p>
+ * 工作进程以与当前进程相同的命令行启动（通常是同一条mvn命令），通过环境变量得知自己的工作进程编号和队列目录；
+ * 它不重新解析项目，只读取协调进程的解析结果，把记录写入协调进程的历史目录，使用各自的编译目录和任务日志。
+ * 在共享文件系统上，其他构建机设置相同的环境变量运行同一命令也可以作为工作进程加入。
+ * <p>
+ * 工作进程异常退出或心跳超时后，其已领取的类放回队列，并重新启动该工作进程，重启次数不超过工作进程数。
+ * 工作进程只在最近有进展（领取或完成一个类、完成一轮生成）时发送心跳，挂起的工作进程因此会心跳超时，
+ * 协调进程强制结束本地的挂起进程。
+ * 协调进程重新运行时，若队列中的类列表未变，则只执行尚未完成的类。
+ */
+public class ShardCoordinator {
+    public static final String WORKER_ENV = "CHATUNITEST_WORKER";
+    public static final String QUEUE_ENV = "CHATUNITEST_SHARD_QUEUE";
+    public static final String HISTORY_ENV = "CHATUNITEST_HISTORY";
+    private static final long POLL_MILLIS = 1000;
+    private static final long HEARTBEAT_MILLIS = 5000;
+    private static final long HEARTBEAT_TIMEOUT_MILLIS = 60000;
+    /**
+     * 工作进程超过该时长没有进展时停止发送心跳
+     */
+    private static final long STALL_MILLIS = 15 * 60000;
+    private static volatile long lastProgress = System.currentTimeMillis();
+
+    private final Config config;
+    private final Map<String, Process> processes = new LinkedHashMap<>();
+    private int restarts = 0;
+
+    public ShardCoordinator(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * 当前进程是否为工作进程
+     */
+    public static boolean isWorker() {
+        return currentWorker() != null;
+    }
+
+    /**
+     * 当前工作进程名，非工作进程时返回null
+     */
+    public static String currentWorker() {
+        String id = System.getenv(WORKER_ENV);
+        return id == null || id.isEmpty() ? null : "worker-" + id;
+    }
+
+    /**
+     * 记录工作进程有进展，心跳只在最近有进展时发送
+     */
+    public static void progress() {
+        lastProgress = System.currentTimeMillis();
+    }
+
+    /**
+     * 队列目录
+     *
+     * @param config 配置对象
+     * @return 模块的分片队列目录
+     */
+    public static Path queueDir(Config config) {
+        return config.getTmpOutput().resolve("shards").toAbsolutePath().normalize();
+    }
+
+    /**
+     * 在工作进程中打开本模块的队列，按工作进程调整配置并开始发送心跳
+     *
+     * @param config 配置对象
+     * @return 队列，队列不属于本模块（如多模块构建中的其他模块）时返回null
+     */
+    public static ShardQueue openWorkerQueue(Config config) {
+        String queueDir = System.getenv(QUEUE_ENV);
+        if (queueDir == null || !Paths.get(queueDir).toAbsolutePath().normalize().equals(queueDir(config))) {
+            return null;
+        }
+        ShardQueue queue = ShardQueue.open(queueDir(config));
+        if (queue == null) {
+            return null;
+        }
+        String worker = currentWorker();
+        // 测试文件按类划分，编译输出目录和合并套件不能在进程间共享
+        config.setCompileOutputPath(config.getTmpOutput().resolve("build-" + worker));
+        config.setValidator(new ValidatorImpl(config.getTestOutput(), config.getCompileOutputPath(),
+                config.getProject().getBasedir().toPath().resolve("target"), config.getClassPaths()));
+        config.setEnableMerge(false);
+        String history = System.getenv(HISTORY_ENV);
+        if (history != null && !history.isEmpty()) {
+            config.setHistoryPath(Paths.get(history));
+        }
+        // 工作进程不写解析结果，延迟解析的记录只保留在内存中
+        ParseStore.open(config.getParseOutput()).setReadOnly(true);
+        progress();
+        queue.heartbeat(worker);
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(() -> {
+            if (System.currentTimeMillis() - lastProgress < STALL_MILLIS) {
+                queue.heartbeat(worker);
+            }
+        }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        return queue;
+    }
+
+    /**
+     * 工作进程自己的分片
+     *
+     * @return 分片编号
+     */
+    public static int homeShard() {
+        return Integer.parseInt(System.getenv(WORKER_ENV)) - 1;
+    }
+
+    /**
+     * 分片执行项目中的类，所有类完成或工作进程全部退出后返回
+     *
+     * @param classPaths 按生成顺序排列的类文件路径
+     * @return 各类的处理结果
+     */
+    public List<ShardQueue.Result> run(List<String> classPaths) {
+        int workers = config.getWorkers();
+        prepareParseOutput();
+        ShardQueue queue = ShardQueue.create(queueDir(config), classPaths, workers);
+        config.getLog().info("\n==========================\n[ChatUniTest] Sharding " + classPaths.size() + " classes to "
+                + workers + " workers, " + queue.pending() + " classes to go, queue in " + queue.getDir());
+        for (int id = 1; id <= workers; id++) {
+            if (!start(queue, id)) {
+                if (processes.isEmpty()) {
+                    config.getLog().warn("Cannot start worker JVMs, running the shards in this JVM");
+                    runInProcess(queue);
+                    return finish(queue);
+                }
+                break;
+            }
+        }
+        try {
+            while (!queue.isDrained()) {
+                Thread.sleep(POLL_MILLIS);
+                for (String worker : queue.staleWorkers(HEARTBEAT_TIMEOUT_MILLIS)) {
+                    Process process = processes.get(worker);
+                    if (process != null && process.isAlive()) {
+                        // 挂起的本地进程，结束后在下面按退出处理并重启
+                        config.getLog().warn("Worker " + worker + " stopped making progress, killing it");
+                        process.destroyForcibly();
+                        continue;
+                    }
+                    requeue(queue, worker);
+                }
+                boolean alive = false;
+                for (Map.Entry<String, Process> entry : new ArrayList<>(processes.entrySet())) {
+                    Process process = entry.getValue();
+                    if (process.isAlive()) {
+                        alive = true;
+                        continue;
+                    }
+                    requeue(queue, entry.getKey());
+                    if (queue.pending() > 0 && restarts < workers) {
+                        config.getLog().warn("Worker " + entry.getKey() + " exited with " + process.exitValue() + ", restarting");
+                        restarts++;
+                        alive |= start(queue, Integer.parseInt(entry.getKey().substring("worker-".length())));
+                    }
+                }
+                if (!alive && !queue.isDrained()) {
+                    if (queue.pending() == 0) {
+                        continue;
+                    }
+                    config.getLog().error("All workers exited with " + queue.pending() + " classes left in " + queue.getDir());
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            processes.values().forEach(Process::destroy);
+        }
+        return finish(queue);
+    }
+
+    /**
+     * 启用延迟解析时先在协调进程中解析存储中全部类（包括内部类和同一文件中的其他类）的依赖并写回解析结果，
+     * 工作进程的解析结果只读
+     */
+    private void prepareParseOutput() {
+        if (!config.isEnableLazyResolution()) {
+            return;
+        }
+        ParseStore store = ParseStore.open(config.getParseOutput());
+        try {
+            for (String fullClassName : store.getClassNames()) {
+                ClassInfo classInfo = AbstractRunner.getClassInfo(config, fullClassName);
+                if (classInfo == null) {
+                    continue;
+                }
+                for (String methodSig : classInfo.methodSigs.keySet()) {
+                    AbstractRunner.getMethodInfo(config, classInfo, methodSig);
+                }
+            }
+        } catch (IOException e) {
+            config.getLog().warn("Resolve dependencies before sharding failed: " + e);
+        }
+        store.flush();
+    }
+
+    /**
+     * 以当前进程的命令行启动一个工作进程，输出写入队列目录下的日志文件
+     *
+     * @return 是否启动成功
+     */
+    private boolean start(ShardQueue queue, int id) {
+        List<String> command = workerCommand();
+        if (command == null) {
+            return false;
+        }
+        String worker = "worker-" + id;
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(new File(System.getProperty("user.dir")))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(queue.getDir().resolve(worker + ".log").toFile()));
+        builder.environment().put(WORKER_ENV, String.valueOf(id));
+        builder.environment().put(QUEUE_ENV, queue.getDir().toString());
+        builder.environment().put(HISTORY_ENV, config.getHistoryPath().toAbsolutePath().toString());
+        try {
+            queue.heartbeat(worker);
+            processes.put(worker, builder.start());
+            return true;
+        } catch (IOException e) {
+            config.getLog().warn("Start worker " + worker + " failed: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * 当前进程的命令行。操作系统截断了过长的参数列表时，由JVM参数、classpath和主类重新拼出
+     */
+    private static List<String> workerCommand() {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        if (!info.command().isPresent()) {
+            return null;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(info.command().get());
+        if (info.arguments().isPresent()) {
+            command.addAll(Arrays.asList(info.arguments().get()));
+            return command;
+        }
+        String mainCommand = System.getProperty("sun.java.command");
+        if (mainCommand == null || mainCommand.isEmpty()) {
+            return null;
+        }
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(Arrays.asList(mainCommand.split(" ")));
+        return command;
+    }
+
+    private void requeue(ShardQueue queue, String worker) {
+        int count = queue.requeue(worker);
+        if (count > 0) {
+            config.getLog().warn("Requeued " + count + " classes claimed by " + worker);
+        }
+    }
+
+    /**
+     * 无法启动工作进程时在当前进程中依次执行队列中的类
+     */
+    private void runInProcess(ShardQueue queue) {
+        Task task = new Task(config);
+        String worker = "worker-0";
+        ShardQueue.Claim claim;
+        while ((claim = queue.claim(worker, 0)) != null) {
+            long start = System.currentTimeMillis();
+            String result = task.runClass(claim.getClassPath());
+            queue.complete(claim, result, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 汇总各工作进程的结果，并为处理过的类统一合并测试套件
+     */
+    private List<ShardQueue.Result> finish(ShardQueue queue) {
+        List<ShardQueue.Result> results = queue.results();
+        Map<String, int[]> byWorker = new TreeMap<>();
+        for (ShardQueue.Result result : results) {
+            int[] stats = byWorker.computeIfAbsent(result.getWorker(), k -> new int[2]);
+            stats[0]++;
+            stats[1] += result.getMillis() / 1000;
+            if (config.isEnableMerge() && result.getResult() != null && result.getResult().startsWith("Processed")) {
+                String classPath = result.getClassPath();
+                String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
+                try {
+                    new TestClassMerger(config, Task.getFullClassName(config, className)).mergeWithSuite();
+                } catch (IOException e) {
+                    config.getLog().warn("Merge tests for " + className + " failed: " + e);
+                }
+            }
+        }
+        byWorker.forEach((worker, stats) ->
+                config.getLog().info(worker + " >>> " + stats[0] + " classes in " + stats[1] + "s"));
+        config.getLog().info("Sharded run finished: " + results.size() + " classes done, "
+                + (queue.pending() + queue.claimed()) + " left");
+        return results;
+    }
+}
@@ -0,0 +1,350 @@
+package zju.cst.aces.runner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lombok.Data;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 基于文件的分片队列，协调进程把待生成的类划分为若干分片，多个工作进程（也可以是共享文件系统上其他机器的进程）从中领取类。
+ * <p>
+ * 每个类是分片目录中的一个条目文件，领取和完成都通过原子重命名完成，同一条目只会被一个进程领取：
+ * <pre>
+ * queue.json                 类列表和分片数，重新运行时据此判断能否继续上次的队列
+ * shard-k/000012             待领取的条目，内容为类文件路径
+ * claimed/worker-n/shard-k.000012
+ * done/shard-k.000012        完成的条目，内容为{@link Result}
+ * workers/worker-n           工作进程的心跳文件
+ * </pre>
+ * 工作进程优先从自己的分片按顺序领取；自己的分片领完后从剩余条目最多的分片末尾窃取，慢分片的工作因此被分摊。
+ * 工作进程退出或心跳超时后，协调进程把它已领取未完成的条目放回原分片。
+ */
+public class ShardQueue {
+    public static final String MANIFEST_FILE = "queue.json";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Path dir;
+    private final int shards;
+
+    /**
+     * 已领取的条目
+     */
+    @Data
+    public static class Claim {
+        private final Path path;
+        private final String classPath;
+        private final String worker;
+    }
+
+    /**
+     * 一个类的处理结果
+     */
+    @Data
+    public static class Result {
+        private String classPath;
+        private String worker;
+        private String result;
+        private long millis;
+    }
+
+    private static class Manifest {
+        List<String> classPaths;
+        int shards;
+    }
+
+    private ShardQueue(Path dir, int shards) {
+        this.dir = dir;
+        this.shards = shards;
+    }
+
+    /**
+     * 创建队列。目录中已有相同类列表和分片数的队列时继续使用，已完成的条目保留，已领取的条目放回分片
+     *
+     * @param dir        队列目录
+     * @param classPaths 按生成顺序排列的类文件路径
+     * @param shards     分片数
+     * @return 队列
+     */
+    public static ShardQueue create(Path dir, List<String> classPaths, int shards) {
+        try {
+            Manifest previous = readManifest(dir);
+            if (previous != null && previous.shards == shards && classPaths.equals(previous.classPaths)) {
+                ShardQueue queue = new ShardQueue(dir, shards);
+                for (String worker : queue.listNames(dir.resolve("claimed"))) {
+                    queue.requeue(worker);
+                }
+                return queue;
+            }
+            if (Files.exists(dir)) {
+                FileUtils.deleteDirectory(dir.toFile());
+            }
+            Files.createDirectories(dir.resolve("claimed"));
+            Files.createDirectories(dir.resolve("done"));
+            Files.createDirectories(dir.resolve("workers"));
+            // 连续划分，同一包中相邻的类通常落在同一分片
+            for (int shard = 0; shard < shards; shard++) {
+                Path shardDir = Files.createDirectories(dir.resolve(shardName(shard)));
+                int from = (int) ((long) classPaths.size() * shard / shards);
+                int to = (int) ((long) classPaths.size() * (shard + 1) / shards);
+                for (int i = from; i < to; i++) {
+                    Files.write(shardDir.resolve(String.format("%06d", i)), classPaths.get(i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            // 清单最后写入，创建中途退出的队列在下次运行时重建
+            Manifest manifest = new Manifest();
+            manifest.classPaths = classPaths;
+            manifest.shards = shards;
+            Path tmp = dir.resolve(MANIFEST_FILE + ".tmp");
+            Files.write(tmp, GSON.toJson(manifest).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, dir.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new ShardQueue(dir, shards);
+        } catch (IOException e) {
+            throw new RuntimeException("In ShardQueue.create: " + e);
+        }
+    }
+
+    /**
+     * 打开协调进程创建的队列
+     *
+     * @param dir 队列目录
+     * @return 队列，目录中没有队列时返回null
+     */
+    public static ShardQueue open(Path dir) {
+        Manifest manifest = readManifest(dir);
+        return manifest == null ? null : new ShardQueue(dir, manifest.shards);
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * 领取一个类：先按顺序领取自己分片中的条目，自己的分片为空时从剩余条目最多的分片末尾窃取
+     *
+     * @param worker    工作进程名
+     * @param homeShard 工作进程自己的分片
+     * @return 领取的条目，队列中没有待领取的条目时返回null
+     */
+    public Claim claim(String worker, int homeShard) {
+        try {
+            Path claimedDir = Files.createDirectories(dir.resolve("claimed").resolve(worker));
+            while (true) {
+                int home = Math.floorMod(homeShard, shards);
+                List<String> entries = listNames(dir.resolve(shardName(home)));
+                boolean steal = entries.isEmpty();
+                int shard = home;
+                if (steal) {
+                    for (int other = 0; other < shards; other++) {
+                        List<String> otherEntries = listNames(dir.resolve(shardName(other)));
+                        if (otherEntries.size() > entries.size()) {
+                            entries = otherEntries;
+                            shard = other;
+                        }
+                    }
+                    if (entries.isEmpty()) {
+                        return null;
+                    }
+                    Collections.reverse(entries);
+                }
+                for (String entry : entries) {
+                    Path target = claimedDir.resolve(shardName(shard) + "." + entry);
+                    try {
+                        Files.move(dir.resolve(shardName(shard)).resolve(entry), target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (NoSuchFileException e) {
+                        // 已被其他进程领取
+                        continue;
+                    }
+                    return new Claim(target, new String(Files.readAllBytes(target), StandardCharsets.UTF_8), worker);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ShardQueue.claim: " + e);
+        }
+    }
+
+    /**
+     * 记录已领取的类处理完成
+     *
+     * @param claim  领取的条目
+     * @param result 处理结果
+     * @param millis 耗时（毫秒）
+     */
+    public void complete(Claim claim, String result, long millis) {
+        Result done = new Result();
+        done.setClassPath(claim.getClassPath());
+        done.setWorker(claim.getWorker());
+        done.setResult(result);
+        done.setMillis(millis);
+        try {
+            Path target = dir.resolve("done").resolve(claim.getPath().getFileName());
+            Path tmp = claim.getPath().resolveSibling(claim.getPath().getFileName() + ".result");
+            Files.write(tmp, GSON.toJson(done).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(claim.getPath());
+        } catch (IOException e) {
+            throw new RuntimeException("In ShardQueue.complete: " + e);
+        }
+    }
+
+    /**
+     * 更新工作进程的心跳
+     *
+     * @param worker 工作进程名
+     */
+    public void heartbeat(String worker) {
+        Path file = dir.resolve("workers").resolve(worker);
+        try {
+            if (!Files.exists(file)) {
+                Files.createFile(file);
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new RuntimeException("In ShardQueue.heartbeat: " + e);
+        }
+    }
+
+    /**
+     * 把工作进程已领取未完成的条目放回原分片的队首
+     *
+     * @param worker 工作进程名
+     * @return 放回的条目数
+     */
+    public int requeue(String worker) {
+        Path claimedDir = dir.resolve("claimed").resolve(worker);
+        int count = 0;
+        try {
+            for (String name : listNames(claimedDir)) {
+                if (name.endsWith(".result")) {
+                    Files.deleteIfExists(claimedDir.resolve(name));
+                    continue;
+                }
+                int dot = name.indexOf('.');
+                Path shardDir = Files.createDirectories(dir.resolve(name.substring(0, dot)));
+                if (Files.exists(dir.resolve("done").resolve(name))) {
+                    Files.deleteIfExists(claimedDir.resolve(name));
+                    continue;
+                }
+                Files.move(claimedDir.resolve(name), shardDir.resolve(name.substring(dot + 1)), StandardCopyOption.ATOMIC_MOVE);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ShardQueue.requeue: " + e);
+        }
+        return count;
+    }
+
+    /**
+     * 心跳超时的工作进程
+     *
+     * @param timeoutMillis 超时（毫秒）
+     * @return 工作进程名
+     */
+    public List<String> staleWorkers(long timeoutMillis) {
+        long now = System.currentTimeMillis();
+        List<String> stale = new ArrayList<>();
+        try {
+            for (String worker : listNames(dir.resolve("workers"))) {
+                if (now - Files.getLastModifiedTime(dir.resolve("workers").resolve(worker)).toMillis() > timeoutMillis) {
+                    stale.add(worker);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ShardQueue.staleWorkers: " + e);
+        }
+        return stale;
+    }
+
+    /**
+     * 待领取的条目数
+     */
+    public int pending() {
+        int count = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            count += listNames(dir.resolve(shardName(shard))).size();
+        }
+        return count;
+    }
+
+    /**
+     * 已领取未完成的条目数
+     */
+    public int claimed() {
+        int count = 0;
+        for (String worker : listNames(dir.resolve("claimed"))) {
+            count += (int) listNames(dir.resolve("claimed").resolve(worker)).stream()
+                    .filter(name -> !name.endsWith(".result")).count();
+        }
+        return count;
+    }
+
+    /**
+     * 所有条目是否都已完成
+     */
+    public boolean isDrained() {
+        return pending() == 0 && claimed() == 0;
+    }
+
+    /**
+     * 已完成条目的处理结果，按类的生成顺序排列
+     */
+    public List<Result> results() {
+        List<Result> results = new ArrayList<>();
+        Path doneDir = dir.resolve("done");
+        for (String name : listNames(doneDir)) {
+            try {
+                Result result = GSON.fromJson(new String(Files.readAllBytes(doneDir.resolve(name)), StandardCharsets.UTF_8), Result.class);
+                if (result != null) {
+                    results.add(result);
+                }
+            } catch (IOException | JsonParseException e) {
+                throw new RuntimeException("In ShardQueue.results: " + e);
+            }
+        }
+        return results;
+    }
+
+    private static String shardName(int shard) {
+        return String.format("shard-%03d", shard);
+    }
+
+    private static Manifest readManifest(Path dir) {
+        Path manifestPath = dir.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifestPath)) {
+            return null;
+        }
+        try {
+            return GSON.fromJson(new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8), Manifest.class);
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 目录中的文件名，按名称排序，目录不存在时为空
+     */
+    private List<String> listNames(Path path) {
+        if (!Files.isDirectory(path)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> children = Files.list(path)) {
+            return children.map(child -> child.getFileName().toString()).sorted().collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        } catch (IOException e) {
+            throw new RuntimeException("In ShardQueue.listNames: " + e);
+        }
+    }
+}
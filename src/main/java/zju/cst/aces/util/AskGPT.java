@@ -2,6 +2,7 @@ package zju.cst.aces.util;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -15,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 
 /**
  * {@code AskGPT} 类提供与ChatGPT模型交互的方法。
@@ -41,7 +43,9 @@ public class AskGPT {
         String apiKey = config.getRandomKey();
         int maxTry = 5;
         while (maxTry > 0) {
+            Cancellation.checkpoint();
             Response response = null;
+            Call call = null;
             try {
                 Map<String, Object> payload = new HashMap<>();
 
@@ -64,7 +68,14 @@ public class AskGPT {
                         .addHeader("Authorization", "Bearer " + apiKey)
                         .build();
 
-                response = config.getClient().newCall(request).execute();
+                call = config.getClient().newCall(request);
+                // a cancelled attempt aborts its in-flight request
+                Cancellation.Registration registration = Cancellation.onCancel(call::cancel);
+                try {
+                    response = call.execute();
+                } finally {
+                    registration.close();
+                }
                 if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
                 try {
                     Thread.sleep(config.sleepTime);
@@ -77,6 +88,9 @@ public class AskGPT {
                 if (response != null) {
                     response.close();
                 }
+                if (call != null && call.isCanceled()) {
+                    throw new CancellationException("In AskGPT.askChatGPT: request cancelled");
+                }
                 config.getLog().error("In AskGPT.askChatGPT: " + e);
                 maxTry--;
             }
@@ -0,0 +1,97 @@
+package zju.cst.aces.util;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancellation token of a unit of work, such as a speculative attempt. The token is bound to the threads running the
+ * work; the work checks it at {@link #checkpoint()}s and registers hooks that abort blocking operations, like an
+ * in-flight HTTP call, as soon as the token is cancelled.
+ */
+public class Cancellation {
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+    private final Set<Runnable> hooks = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+
+    /**
+     * A registered cancel hook, closing it unregisters the hook.
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * The token bound to the current thread, null if there is none.
+     */
+    public static Cancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Throw a {@link CancellationException} if the token bound to the current thread is cancelled.
+     */
+    public static void checkpoint() {
+        Cancellation token = CURRENT.get();
+        if (token != null && token.cancelled) {
+            throw new CancellationException("Cancelled");
+        }
+    }
+
+    /**
+     * Run a hook when the token bound to the current thread is cancelled, right away if it already is.
+     */
+    public static Registration onCancel(Runnable hook) {
+        Cancellation token = CURRENT.get();
+        if (token == null) {
+            return () -> {};
+        }
+        token.hooks.add(hook);
+        if (token.cancelled) {
+            hook.run();
+        }
+        return () -> token.hooks.remove(hook);
+    }
+
+    /**
+     * Wrap work submitted to another thread so that it runs with the token of the submitting thread.
+     */
+    public static <T> Callable<T> propagate(Callable<T> work) {
+        Cancellation token = CURRENT.get();
+        if (token == null) {
+            return work;
+        }
+        return () -> token.call(work);
+    }
+
+    /**
+     * Run work with this token bound to the current thread.
+     */
+    public <T> T call(Callable<T> work) throws Exception {
+        Cancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Runnable hook : hooks) {
+            hook.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
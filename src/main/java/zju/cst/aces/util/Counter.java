@@ -6,6 +6,7 @@ import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.parser.ClassParser;
+import zju.cst.aces.parser.ParseStore;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,17 +42,7 @@ public class Counter {
      */
     public static Map<String, List<String>> countClassMethod(Path parseOutputPath) throws IOException {
         Map<String, List<String>> testMap = new HashMap<>();
-        // 获取所有名为 "class.json" 的 JSON 文件
-        List<String> classJsonFiles = Files.walk(parseOutputPath)
-                .filter(Files::isRegularFile)
-                .map(Path::toString)
-                .filter(f -> f.endsWith("class.json"))
-                .collect(Collectors.toList());
-
-        for (String classJsonFile : classJsonFiles) {
-            File classInfoFile = new File(classJsonFile);
-            ClassInfo classInfo = GSON.fromJson(Files.readString(classInfoFile.toPath(), StandardCharsets.UTF_8), ClassInfo.class);
-
+        for (ClassInfo classInfo : loadClassInfos(parseOutputPath)) {
             if (!filter(classInfo)) {
                 continue;
             }
@@ -81,6 +72,35 @@ public class Counter {
         return testMap;
     }
 
+    /**
+     * 读取解析输出中的所有类信息，优先读取单文件存储，不存在时回退到 {@code class.json} 文件。
+     *
+     * @param parseOutputPath 解析输出路径
+     * @return 类信息列表
+     * @throws IOException 如果发生IO错误
+     */
+    private static List<ClassInfo> loadClassInfos(Path parseOutputPath) throws IOException {
+        List<ClassInfo> classInfos = new ArrayList<>();
+        if (ParseStore.exists(parseOutputPath)) {
+            ParseStore store = ParseStore.open(parseOutputPath);
+            for (String fullClassName : store.getClassNames()) {
+                classInfos.add(store.getClassInfo(fullClassName));
+            }
+            return classInfos;
+        }
+        // 获取所有名为 "class.json" 的 JSON 文件
+        List<String> classJsonFiles = Files.walk(parseOutputPath)
+                .filter(Files::isRegularFile)
+                .map(Path::toString)
+                .filter(f -> f.endsWith("class.json"))
+                .collect(Collectors.toList());
+        for (String classJsonFile : classJsonFiles) {
+            File classInfoFile = new File(classJsonFile);
+            classInfos.add(GSON.fromJson(Files.readString(classInfoFile.toPath(), StandardCharsets.UTF_8), ClassInfo.class));
+        }
+        return classInfos;
+    }
+
     /**
      * 获取指定类和方法签名的 {@code MethodInfo} 对象。
      *
@@ -91,6 +111,14 @@ public class Counter {
      * @throws IOException 如果发生IO错误
      */
     public static MethodInfo getMethodInfo(Path parseOutputPath, ClassInfo info, String mSig) throws IOException {
+        return MetadataCache.methodInfos().get(MetadataCache.key(parseOutputPath, info.fullClassName + "#" + mSig),
+                key -> loadMethodInfo(parseOutputPath, info, mSig));
+    }
+
+    private static MethodInfo loadMethodInfo(Path parseOutputPath, ClassInfo info, String mSig) throws IOException {
+        if (ParseStore.exists(parseOutputPath)) {
+            return ParseStore.open(parseOutputPath).getMethodInfo(info.fullClassName, mSig);
+        }
         String packagePath = info.getPackageName()
                 .replace("package ", "")
                 .replace(".", File.separator)
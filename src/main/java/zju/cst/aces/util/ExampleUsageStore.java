@@ -0,0 +1,100 @@
+package zju.cst.aces.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared, read-only index of the example usages file.
+ * The file is stream-parsed once per path (and re-parsed only if it changes on disk),
+ * every usage list is sorted by length at load time, and the index is safe to share across threads.
+ */
+public class ExampleUsageStore {
+    private static final Map<Path, ExampleUsageStore> STORES = new ConcurrentHashMap<>();
+
+    private final long lastModified;
+    private final long size;
+    private final Map<String, Map<String, List<String>>> usages;
+
+    private ExampleUsageStore(long lastModified, long size, Map<String, Map<String, List<String>>> usages) {
+        this.lastModified = lastModified;
+        this.size = size;
+        this.usages = usages;
+    }
+
+    /**
+     * Get the shared store of the example file, or null if the file does not exist.
+     */
+    public static ExampleUsageStore of(Path path) {
+        if (path == null || !Files.isRegularFile(path)) {
+            return null;
+        }
+        Path key = path.toAbsolutePath().normalize();
+        return STORES.compute(key, (k, store) -> {
+            try {
+                long lastModified = Files.getLastModifiedTime(k).toMillis();
+                long size = Files.size(k);
+                if (store != null && store.lastModified == lastModified && store.size == size) {
+                    return store;
+                }
+                return new ExampleUsageStore(lastModified, size, load(k));
+            } catch (IOException e) {
+                throw new RuntimeException("In ExampleUsageStore.of: " + e);
+            }
+        });
+    }
+
+    /**
+     * Get the usages of a class, keyed by method signature. Each list is sorted from the shortest usage.
+     */
+    public Map<String, List<String>> getUsages(String className) {
+        return usages.get(className);
+    }
+
+    private static Map<String, Map<String, List<String>>> load(Path path) throws IOException {
+        Map<String, Map<String, List<String>>> result = new HashMap<>();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String className = json.nextName();
+                if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                    json.skipValue();
+                    continue;
+                }
+                Map<String, List<String>> methodUsages = new HashMap<>();
+                json.beginObject();
+                while (json.hasNext()) {
+                    String methodSig = json.nextName();
+                    if (json.peek() != JsonToken.BEGIN_ARRAY) {
+                        json.skipValue();
+                        continue;
+                    }
+                    List<String> list = new ArrayList<>();
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        if (json.peek() == JsonToken.STRING) {
+                            list.add(json.nextString());
+                        } else {
+                            json.skipValue();
+                        }
+                    }
+                    json.endArray();
+                    list.sort(Comparator.comparingInt(String::length));
+                    methodUsages.put(methodSig, Collections.unmodifiableList(list));
+                }
+                json.endObject();
+                result.put(className, Collections.unmodifiableMap(methodUsages));
+            }
+            json.endObject();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,203 @@
+package zju.cst.aces.util;
+
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared, thread-safe cache of parsed metadata.
+ * <p>
+ * The most recently used {@code maximumSize} entries are held strongly in LRU order. Entries evicted from the LRU
+ * are kept behind soft references, so they stay reachable until the GC needs the memory and are promoted back on
+ * the next hit. Missing values are cached too, since the same unknown (e.g. JDK) dependency is looked up over and
+ * over. The cached objects are shared between threads and must be treated as read-only.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class MetadataCache<K, V> {
+    public static final int DEFAULT_MAXIMUM_SIZE = 2048;
+    private static final Object MISSING = new Object();
+
+    private static final MetadataCache<String, ClassInfo> CLASS_INFOS = new MetadataCache<>("ClassInfo", DEFAULT_MAXIMUM_SIZE);
+    private static final MetadataCache<String, MethodInfo> METHOD_INFOS = new MetadataCache<>("MethodInfo", DEFAULT_MAXIMUM_SIZE * 4);
+
+    /**
+     * Load a value on a miss, may return null when the value does not exist.
+     */
+    public interface Loader<K, V> {
+        V load(K key) throws IOException;
+    }
+
+    private static class SoftValue<K> extends SoftReference<Object> {
+        private final K key;
+
+        SoftValue(K key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    private final String name;
+    private final LinkedHashMap<K, Object> lru;
+    private final Map<K, SoftValue<K>> soft = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder softHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile int maximumSize;
+
+    public MetadataCache(String name, int maximumSize) {
+        this.name = name;
+        this.maximumSize = maximumSize;
+        this.lru = new LinkedHashMap<K, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Object> eldest) {
+                if (size() <= MetadataCache.this.maximumSize) {
+                    return false;
+                }
+                evictions.increment();
+                soft.put(eldest.getKey(), new SoftValue<>(eldest.getKey(), eldest.getValue(), queue));
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Cache of class infos, keyed by parse output and class name.
+     */
+    public static MetadataCache<String, ClassInfo> classInfos() {
+        return CLASS_INFOS;
+    }
+
+    /**
+     * Cache of method infos, keyed by parse output, full class name and method signature.
+     */
+    public static MetadataCache<String, MethodInfo> methodInfos() {
+        return METHOD_INFOS;
+    }
+
+    /**
+     * Key of a name under a parse output directory, the same name may be parsed into several outputs.
+     */
+    public static String key(Path parseOutput, String name) {
+        return parseOutput + "|" + name;
+    }
+
+    /**
+     * Set the number of strongly held entries of the shared caches, method infos get four times as many.
+     */
+    public static void setMaximumSize(int maximumSize) {
+        CLASS_INFOS.resize(maximumSize);
+        METHOD_INFOS.resize(maximumSize * 4);
+    }
+
+    /**
+     * Drop all entries of the shared caches, called when the parse output is rewritten.
+     */
+    public static void invalidateAll() {
+        CLASS_INFOS.clear();
+        METHOD_INFOS.clear();
+    }
+
+    /**
+     * Get the cached value, loading it on a miss. Concurrent misses on the same key may both load.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key, Loader<K, V> loader) throws IOException {
+        expunge();
+        Object value;
+        synchronized (lru) {
+            value = lru.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return value == MISSING ? null : (V) value;
+        }
+        SoftValue<K> ref = soft.remove(key);
+        value = ref == null ? null : ref.get();
+        if (value != null) {
+            softHits.increment();
+        } else {
+            misses.increment();
+            V loaded = loader.load(key);
+            value = loaded == null ? MISSING : loaded;
+        }
+        synchronized (lru) {
+            lru.put(key, value);
+        }
+        return value == MISSING ? null : (V) value;
+    }
+
+    /**
+     * Replace the cached value of a key, e.g. after the value has been completed.
+     */
+    public void put(K key, V value) {
+        soft.remove(key);
+        synchronized (lru) {
+            lru.put(key, value == null ? MISSING : value);
+        }
+    }
+
+    public void resize(int maximumSize) {
+        this.maximumSize = Math.max(1, maximumSize);
+    }
+
+    public void clear() {
+        synchronized (lru) {
+            lru.clear();
+        }
+        soft.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getSoftHits() {
+        return softHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long total = getHits() + getSoftHits() + getMisses();
+        return total == 0 ? 0 : (double) (getHits() + getSoftHits()) / total;
+    }
+
+    /**
+     * Drop soft entries whose values have been collected.
+     */
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        SoftValue<K> ref;
+        while ((ref = (SoftValue<K>) queue.poll()) != null) {
+            soft.remove(ref.key, ref);
+        }
+    }
+
+    @Override
+    public String toString() {
+        int size;
+        synchronized (lru) {
+            size = lru.size();
+        }
+        return String.format("%s cache: size %d (+%d soft), hits %d, soft hits %d, misses %d, evictions %d, hit rate %.2f",
+                name, size, soft.size(), getHits(), getSoftHits(), getMisses(), getEvictions(), getHitRate());
+    }
+}
@@ -0,0 +1,270 @@
+package zju.cst.aces.util;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.stmt.*;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+import zju.cst.aces.runner.AbstractRunner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 方法优先级，按单位成本的预期收益为方法打分，优先生成收益高、成本低的方法，配合生成预算使单位时间内的覆盖率增长最大。
+ * <p>
+ * 预期收益为未覆盖比例乘以（圈复杂度 + 依赖扇出的一半）：复杂度越高，测试能覆盖的分支越多；依赖的方法越多，
+ * 测试间接覆盖的代码越多。未覆盖比例取自Jacoco XML报告中方法的行覆盖率，没有报告或报告中没有该方法时为1，
+ * 已完全覆盖的方法得分为0。成本为估算的提示token数：方法源码、类的字段和构造方法摘要，以及每个依赖方法的固定估算。
+ * <p>
+ * 类的得分为其中各方法收益之和除以成本之和，即完整生成这个类时的单位成本收益。
+ */
+public class MethodPriority {
+    /**
+     * 每个依赖方法在提示中的估算token数
+     */
+    private static final int DEPENDENCY_TOKENS = 60;
+    private static final Map<Path, Map<String, List<XmlParser.CoverageInfo>>> REPORTS = new ConcurrentHashMap<>();
+    private static final Map<String, Double> SCORES = new ConcurrentHashMap<>();
+    private static final Map<String, String> BINARY_NAMES = new ConcurrentHashMap<>();
+
+    /**
+     * 按类得分从高到低排列类，得分相同的保持原顺序
+     */
+    public static List<String> orderClasses(Config config, List<String> fullClassNames) {
+        Map<String, Double> scores = new HashMap<>();
+        try {
+            for (String fullClassName : fullClassNames) {
+                ClassInfo classInfo = AbstractRunner.getClassInfo(config, fullClassName);
+                scores.put(fullClassName, classInfo == null ? 0 : scoreClass(config, classInfo));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In MethodPriority.orderClasses: " + e);
+        }
+        List<String> ordered = new ArrayList<>(fullClassNames);
+        ordered.sort(Comparator.comparingDouble((String name) -> scores.get(name)).reversed());
+        return ordered;
+    }
+
+    /**
+     * 按方法得分从高到低排列类中的方法签名，得分相同的保持声明顺序
+     */
+    public static List<String> orderMethods(Config config, ClassInfo classInfo) {
+        Map<String, Double> scores = new HashMap<>();
+        try {
+            for (String methodSig : classInfo.methodSigs.keySet()) {
+                MethodInfo methodInfo = AbstractRunner.getMethodInfo(config, classInfo, methodSig);
+                scores.put(methodSig, methodInfo == null ? 0 : score(config, classInfo, methodInfo));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In MethodPriority.orderMethods: " + e);
+        }
+        List<String> ordered = new ArrayList<>(classInfo.methodSigs.keySet());
+        ordered.sort(Comparator.comparingDouble((String sig) -> scores.get(sig)).reversed());
+        return ordered;
+    }
+
+    /**
+     * 方法的单位成本预期收益
+     */
+    public static double score(Config config, ClassInfo classInfo, MethodInfo methodInfo) {
+        return SCORES.computeIfAbsent(config.getParseOutput() + "|" + classInfo.fullClassName + "#" + methodInfo.methodSignature,
+                key -> expectedYield(config, classInfo, methodInfo) / estimateCost(classInfo, methodInfo));
+    }
+
+    private static double scoreClass(Config config, ClassInfo classInfo) throws IOException {
+        double yield = 0;
+        double cost = 0;
+        for (String methodSig : classInfo.methodSigs.keySet()) {
+            MethodInfo methodInfo = AbstractRunner.getMethodInfo(config, classInfo, methodSig);
+            if (methodInfo == null || !Counter.filter(methodInfo)) {
+                continue;
+            }
+            yield += expectedYield(config, classInfo, methodInfo);
+            cost += estimateCost(classInfo, methodInfo);
+        }
+        return cost == 0 ? 0 : yield / cost;
+    }
+
+    private static double expectedYield(Config config, ClassInfo classInfo, MethodInfo methodInfo) {
+        return uncoveredRatio(config, classInfo, methodInfo) * (complexity(methodInfo) + 0.5 * fanOut(methodInfo));
+    }
+
+    /**
+     * 估算的提示token数
+     */
+    public static int estimateCost(ClassInfo classInfo, MethodInfo methodInfo) {
+        int tokens = TokenCounter.countToken(methodInfo.sourceCode);
+        if (classInfo.fields != null) {
+            tokens += TokenCounter.countToken(String.join("\n", classInfo.fields));
+        }
+        if (classInfo.constructorBrief != null) {
+            tokens += TokenCounter.countToken(String.join("\n", classInfo.constructorBrief));
+        }
+        return Math.max(1, tokens + DEPENDENCY_TOKENS * fanOut(methodInfo));
+    }
+
+    /**
+     * 依赖扇出：方法依赖的其他方法（含其他类的方法）数
+     */
+    public static int fanOut(MethodInfo methodInfo) {
+        int count = 0;
+        if (methodInfo.dependentMethods != null) {
+            for (Set<String> methods : methodInfo.dependentMethods.values()) {
+                count += methods.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 圈复杂度：判定点数加1，源码无法解析时为1
+     */
+    public static int complexity(MethodInfo methodInfo) {
+        if (methodInfo.sourceCode == null || methodInfo.sourceCode.isEmpty()) {
+            return 1;
+        }
+        ParseResult<BodyDeclaration<?>> result = new JavaParser().parseBodyDeclaration(methodInfo.sourceCode);
+        if (!result.getResult().isPresent()) {
+            return 1;
+        }
+        BodyDeclaration<?> body = result.getResult().get();
+        int decisions = body.findAll(IfStmt.class).size()
+                + body.findAll(ForStmt.class).size()
+                + body.findAll(ForEachStmt.class).size()
+                + body.findAll(WhileStmt.class).size()
+                + body.findAll(DoStmt.class).size()
+                + body.findAll(CatchClause.class).size()
+                + body.findAll(ConditionalExpr.class).size()
+                + body.findAll(SwitchEntry.class, entry -> !entry.getLabels().isEmpty()).size()
+                + body.findAll(BinaryExpr.class, expr -> expr.getOperator() == BinaryExpr.Operator.AND
+                        || expr.getOperator() == BinaryExpr.Operator.OR).size();
+        return decisions + 1;
+    }
+
+    /**
+     * 未覆盖的行（没有行计数器时为指令）比例，没有覆盖率信息时为1
+     */
+    public static double uncoveredRatio(Config config, ClassInfo classInfo, MethodInfo methodInfo) {
+        Map<String, List<XmlParser.CoverageInfo>> report = loadReport(config);
+        List<XmlParser.CoverageInfo> coverageInfos = report.get(binaryName(config, classInfo) + "#" + normalize(methodInfo.methodSignature));
+        if (coverageInfos == null) {
+            return 1;
+        }
+        XmlParser.CoverageInfo counter = null;
+        for (XmlParser.CoverageInfo coverageInfo : coverageInfos) {
+            if (coverageInfo.getType().equals("LINE")) {
+                counter = coverageInfo;
+            } else if (counter == null && coverageInfo.getType().equals("INSTRUCTION")) {
+                counter = coverageInfo;
+            }
+        }
+        if (counter == null || counter.getMissed() + counter.getCovered() == 0) {
+            return 1;
+        }
+        return (double) counter.getMissed() / (counter.getMissed() + counter.getCovered());
+    }
+
+    /**
+     * Jacoco报告中的类名，即以/分隔的二进制名，内部类为外部类名加$，如a/b/Outer$Inner
+     */
+    static String binaryName(Config config, ClassInfo classInfo) {
+        String packagePath = classInfo.packageName == null || classInfo.packageName.isEmpty() ? ""
+                : classInfo.packageName.replace('.', '/') + "/";
+        // 与源文件同名的类是顶层类，不必解析源码
+        if (classInfo.sourcePath == null || Paths.get(classInfo.sourcePath).getFileName().toString().equals(classInfo.className + ".java")) {
+            return packagePath + classInfo.className;
+        }
+        return BINARY_NAMES.computeIfAbsent(config.getParseOutput() + "|" + classInfo.fullClassName,
+                key -> packagePath + outerClassNames(classInfo) + classInfo.className);
+    }
+
+    /**
+     * 外部类名前缀，如Outer$，同一文件中的其他顶层类为空
+     */
+    private static String outerClassNames(ClassInfo classInfo) {
+        String code = classInfo.getCompilationUnitCode();
+        if (code == null) {
+            return "";
+        }
+        ParseResult<CompilationUnit> result = new JavaParser().parse(code);
+        if (!result.getResult().isPresent()) {
+            return "";
+        }
+        Optional<ClassOrInterfaceDeclaration> declaration = result.getResult().get()
+                .findFirst(ClassOrInterfaceDeclaration.class, node -> node.getNameAsString().equals(classInfo.className));
+        StringBuilder outer = new StringBuilder();
+        Optional<Node> parent = declaration.flatMap(Node::getParentNode);
+        while (parent.isPresent()) {
+            if (parent.get() instanceof TypeDeclaration) {
+                outer.insert(0, ((TypeDeclaration<?>) parent.get()).getNameAsString() + "$");
+            }
+            parent = parent.get().getParentNode();
+        }
+        return outer.toString();
+    }
+
+    /**
+     * 报告中的方法覆盖率，键的方法签名已规范化
+     */
+    private static Map<String, List<XmlParser.CoverageInfo>> loadReport(Config config) {
+        Path report = config.getCoverageReport();
+        if (report == null) {
+            report = config.getProject().getBasedir().toPath().resolve("target").resolve("site").resolve("jacoco").resolve("jacoco.xml");
+        }
+        if (!report.toFile().exists()) {
+            return Collections.emptyMap();
+        }
+        return REPORTS.computeIfAbsent(report.toAbsolutePath().normalize(), path -> {
+            Map<String, List<XmlParser.CoverageInfo>> coverageInfos = new HashMap<>();
+            new XmlParser().getCoverageInfos(path.toString()).forEach((key, value) -> {
+                int split = key.indexOf('#');
+                coverageInfos.put(key.substring(0, split) + "#" + normalize(key.substring(split + 1)), value);
+            });
+            config.getLog().info("Loaded coverage of " + coverageInfos.size() + " methods from " + path);
+            return coverageInfos;
+        });
+    }
+
+    /**
+     * 规范化方法签名以便与字节码描述符解析出的签名比较：去掉空格和泛型参数，参数类型只保留简单名，可变参数写作数组
+     */
+    static String normalize(String signature) {
+        String noSpace = signature.replaceAll("\\s", "");
+        StringBuilder plain = new StringBuilder();
+        int depth = 0;
+        for (char c : noSpace.toCharArray()) {
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            } else if (depth == 0) {
+                plain.append(c);
+            }
+        }
+        int open = plain.indexOf("(");
+        if (open < 0) {
+            return plain.toString();
+        }
+        String params = plain.substring(open + 1, plain.length() - 1);
+        List<String> simple = new ArrayList<>();
+        if (!params.isEmpty()) {
+            for (String param : params.split(",")) {
+                param = param.replace("...", "[]");
+                simple.add(param.substring(Math.max(param.lastIndexOf('.'), param.lastIndexOf('$')) + 1));
+            }
+        }
+        return plain.substring(0, open) + "(" + String.join(",", simple) + ")";
+    }
+}
@@ -0,0 +1,73 @@
+package zju.cst.aces.util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Run-scoped pool of the strings and string lists repeated across parsed classes and methods, such as imports,
+ * package declarations, type names and method signatures. Every class of a package loaded from the parse output
+ * then shares one copy of them.
+ * <p>
+ * Pooled lists are unmodifiable, like the parsed metadata holding them they must be treated as read-only.
+ */
+public class StringPool {
+    private static final StringPool SHARED = new StringPool();
+
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+    private final Map<List<String>, List<String>> lists = new ConcurrentHashMap<>();
+
+    /**
+     * The pool of the current run, used by the parse store.
+     */
+    public static StringPool shared() {
+        return SHARED;
+    }
+
+    public String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        String pooled = strings.putIfAbsent(s, s);
+        return pooled == null ? s : pooled;
+    }
+
+    public List<String> intern(List<String> list) {
+        if (list == null) {
+            return null;
+        }
+        List<String> interned = new ArrayList<>(list.size());
+        for (String s : list) {
+            interned.add(intern(s));
+        }
+        List<String> candidate = Collections.unmodifiableList(interned);
+        List<String> pooled = lists.putIfAbsent(interned, candidate);
+        return pooled == null ? candidate : pooled;
+    }
+
+    /**
+     * A copy of a dependency map with its class names and method signatures interned.
+     */
+    public Map<String, Set<String>> intern(Map<String, Set<String>> dependencies) {
+        if (dependencies == null) {
+            return null;
+        }
+        Map<String, Set<String>> interned = new LinkedHashMap<>();
+        dependencies.forEach((className, sigs) -> {
+            Set<String> internedSigs = new LinkedHashSet<>();
+            for (String sig : sigs) {
+                internedSigs.add(intern(sig));
+            }
+            interned.put(intern(className), internedSigs);
+        });
+        return interned;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    public void clear() {
+        strings.clear();
+        lists.clear();
+    }
+}
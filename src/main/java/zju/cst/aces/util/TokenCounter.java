@@ -14,13 +14,17 @@ import com.knuddels.jtokkit.api.ModelType;
  */
 public class TokenCounter {
 
+    // Loading the registry is expensive and encodings are thread-safe, so share one.
+    private static final EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
+    private static final Encoding encoding = registry.getEncodingForModel(ModelType.GPT_3_5_TURBO);
+
     public TokenCounter() {
     }
 
     public static int countToken(String error_message){
-        EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
-        // Get encoding for a specific model via string name
-        Encoding encoding = registry.getEncodingForModel(ModelType.GPT_3_5_TURBO);
+        if (error_message == null) {
+            return 0;
+        }
         int tokenCount = encoding.countTokens(error_message);
         return tokenCount;
     }
@@ -11,7 +11,9 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 /**
  * XML解析器类，用于从Jacoco生成的XML报告中提取覆盖率信息。
  */
@@ -83,6 +85,53 @@ public class XmlParser {
 //        return result.equals("")?"Failure":result;
         return coverageInfoList;
     }
+    /**
+     * 一次解析XML报告，获取其中所有方法的覆盖率信息。
+     *
+     * @param xmlFilePath XML文件路径
+     * @return 以"类名#方法签名"为键的覆盖率信息，类名形如com/example/Foo，方法签名同{@link #parseMethodDescriptor(String)}，
+     * 构造方法以简单类名为方法名，签名中不含空格
+     */
+    public Map<String, List<CoverageInfo>> getCoverageInfos(String xmlFilePath) {
+        Map<String, List<CoverageInfo>> coverageInfos = new HashMap<>();
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false); // 禁用DTD验证
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(new File(xmlFilePath));
+            NodeList classNodes = document.getElementsByTagName("class");
+            for (int j = 0; j < classNodes.getLength(); j++) {
+                Element classElement = (Element) classNodes.item(j);
+                String className = classElement.getAttribute("name");
+                String simpleName = className.substring(Math.max(className.lastIndexOf('/'), className.lastIndexOf('$')) + 1);
+                NodeList methodNodes = classElement.getElementsByTagName("method");
+                for (int k = 0; k < methodNodes.getLength(); k++) {
+                    Element methodElement = (Element) methodNodes.item(k);
+                    String methodName = methodElement.getAttribute("name");
+                    if (methodName.equals("<init>")) {
+                        methodName = simpleName;
+                    }
+                    String signature = (methodName + parseMethodDescriptor(methodElement.getAttribute("desc"))).replaceAll(" ", "");
+                    List<CoverageInfo> coverageInfoList = new ArrayList<>();
+                    // 只取方法自身的计数器，不含其中指令和行的子元素
+                    NodeList counterNodes = methodElement.getChildNodes();
+                    for (int l = 0; l < counterNodes.getLength(); l++) {
+                        if (!(counterNodes.item(l) instanceof Element) || !((Element) counterNodes.item(l)).getTagName().equals("counter")) {
+                            continue;
+                        }
+                        Element counterElement = (Element) counterNodes.item(l);
+                        coverageInfoList.add(new CoverageInfo(counterElement.getAttribute("type"),
+                                Integer.parseInt(counterElement.getAttribute("missed")),
+                                Integer.parseInt(counterElement.getAttribute("covered"))));
+                    }
+                    coverageInfos.put(className + "#" + signature, coverageInfoList);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return coverageInfos;
+    }
     /**
      * 解析方法描述符，返回方法参数的类型字符串。
      *
@@ -0,0 +1,92 @@
+package zju.cst.aces.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphHelperTest {
+    static class Name extends Node<String> {
+        Name(String data) {
+            super(data);
+        }
+    }
+
+    static class Link extends Edge<Name> {
+        Link(Name source, Name target) {
+            super(source, target);
+        }
+    }
+
+    static class NameGraph extends Graph<Name, Link> {
+        private final Map<String, Name> names = new HashMap<>();
+
+        NameGraph link(String source, String target) {
+            addEdge(new Link(name(source), name(target)));
+            return this;
+        }
+
+        Name name(String data) {
+            return names.computeIfAbsent(data, Name::new);
+        }
+    }
+
+    @Test
+    void componentsOfACyclicGraphComeAfterTheirTargets() {
+        // a -> b -> c -> a is a cycle calling d, d <-> e is another cycle, f only calls a
+        NameGraph graph = new NameGraph()
+                .link("f", "a")
+                .link("a", "b")
+                .link("b", "c")
+                .link("c", "a")
+                .link("c", "d")
+                .link("d", "e")
+                .link("e", "d");
+
+        List<Set<String>> components = GraphHelper.stronglyConnectedComponents(graph).stream()
+                .map(component -> component.stream().map(Node::getData).collect(Collectors.toSet()))
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(
+                new HashSet<>(Arrays.asList("d", "e")),
+                new HashSet<>(Arrays.asList("a", "b", "c")),
+                Collections.singleton("f")), components);
+    }
+
+    @Test
+    void everyNodeIsInExactlyOneComponent() {
+        NameGraph graph = new NameGraph();
+        graph.addNode(graph.name("alone"));
+        graph.link("self", "self").link("x", "y").link("y", "x").link("y", "z");
+
+        List<List<Name>> components = GraphHelper.stronglyConnectedComponents(graph);
+        List<String> all = components.stream().flatMap(List::stream).map(Node::getData).sorted().collect(Collectors.toList());
+        assertEquals(Arrays.asList("alone", "self", "x", "y", "z"), all);
+        assertEquals(4, components.size());
+    }
+
+    @Test
+    void deepChainDoesNotOverflowTheStack() {
+        NameGraph graph = new NameGraph();
+        for (int i = 0; i < 100000; i++) {
+            graph.link("n" + i, "n" + (i + 1));
+        }
+        graph.link("n100000", "n0");
+
+        List<List<Name>> components = GraphHelper.stronglyConnectedComponents(graph);
+        assertEquals(1, components.size());
+        assertEquals(100001, components.get(0).size());
+    }
+
+    @Test
+    void topologicalSortRejectsCycles() {
+        NameGraph acyclic = new NameGraph().link("a", "b").link("b", "c").link("a", "c");
+        assertEquals(Arrays.asList("a", "b", "c"),
+                GraphHelper.topologicalSort(acyclic).stream().map(Node::getData).collect(Collectors.toList()));
+
+        NameGraph cyclic = new NameGraph().link("a", "b").link("b", "a");
+        assertThrows(IllegalArgumentException.class, () -> GraphHelper.topologicalSort(cyclic));
+    }
+}
@@ -0,0 +1,72 @@
+package zju.cst.aces.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseManifestTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsThroughTheParseOutput() throws Exception {
+        Path source = write("Foo.java", "class Foo {}");
+        ParseManifest manifest = new ParseManifest();
+        manifest.setNextIndex(7);
+        manifest.put(source.toString(), Arrays.asList("p.Foo", "p.Helper"), Collections.singleton("p.Bar"));
+        Path output = dir.resolve("out");
+        manifest.save(output);
+
+        ParseManifest loaded = ParseManifest.load(output);
+        assertEquals(7, loaded.getNextIndex());
+        ParseManifest.Entry entry = loaded.getFiles().get(source.toString());
+        assertEquals(Arrays.asList("p.Foo", "p.Helper"), entry.getClasses());
+        assertEquals(Collections.singleton("p.Bar"), entry.getDependencies());
+        assertFalse(loaded.isChanged(source.toString()));
+
+        ParseManifest.delete(output);
+        assertNull(ParseManifest.load(output));
+    }
+
+    @Test
+    void unreadableManifestMeansFullParse() throws Exception {
+        Files.writeString(dir.resolve(ParseManifest.MANIFEST_FILE), "{\"files\": [", StandardCharsets.UTF_8);
+        assertNull(ParseManifest.load(dir));
+    }
+
+    @Test
+    void detectsEditedAndNewFiles() throws Exception {
+        Path source = write("Foo.java", "class Foo {}");
+        ParseManifest manifest = new ParseManifest();
+        manifest.put(source.toString(), Collections.singletonList("p.Foo"), Collections.emptySet());
+
+        write("Foo.java", "class Foo { int x; }");
+        assertTrue(manifest.isChanged(source.toString()));
+        assertTrue(manifest.isChanged(dir.resolve("Bar.java").toString()));
+    }
+
+    @Test
+    void touchedFileIsNotChanged() throws Exception {
+        Path source = write("Foo.java", "class Foo {}");
+        ParseManifest manifest = new ParseManifest();
+        manifest.put(source.toString(), Collections.singletonList("p.Foo"), Collections.emptySet());
+        long mtime = Files.getLastModifiedTime(source).toMillis() + 60000;
+        Files.setLastModifiedTime(source, FileTime.fromMillis(mtime));
+
+        assertFalse(manifest.isChanged(source.toString()));
+        // the entry takes the new time, so the next check does not hash the file again
+        assertEquals(mtime, manifest.getFiles().get(source.toString()).getMtime());
+    }
+
+    private Path write(String name, String content) throws Exception {
+        return Files.writeString(dir.resolve(name), content, StandardCharsets.UTF_8);
+    }
+}
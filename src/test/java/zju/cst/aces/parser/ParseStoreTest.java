@@ -0,0 +1,178 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseStoreTest {
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeStore() {
+        ParseStore.close(dir);
+    }
+
+    @Test
+    void roundTripsClassesMethodsAndCode() {
+        ParseStore store = ParseStore.open(dir);
+        store.putClass(classInfo("p.Foo", "class Foo {}"));
+        store.putMethod("p.Foo", methodInfo("Foo", "run(int)", "void run(int x) {}"));
+
+        ClassInfo classInfo = store.getClassInfo("p.Foo");
+        assertEquals("Foo", classInfo.className);
+        assertEquals("class Foo {}", classInfo.getClassDeclarationCode());
+        assertEquals("void run(int x) {}", store.getMethodInfo("p.Foo", "run(int)").sourceCode);
+        assertNull(store.getMethodInfo("p.Foo", "stop()"));
+        assertEquals(Collections.singleton("p.Foo"), store.getClassNames());
+    }
+
+    @Test
+    void reopensFromPersistedIndex() {
+        ParseStore store = ParseStore.open(dir);
+        store.putClass(classInfo("p.Foo", "class Foo {}"));
+        store.putMethod("p.Foo", methodInfo("Foo", "run()", "void run() {}"));
+        store.flush();
+        ParseStore.close(dir);
+
+        ParseStore reopened = ParseStore.open(dir);
+        assertNotSame(store, reopened);
+        assertEquals("class Foo {}", reopened.getClassInfo("p.Foo").getClassDeclarationCode());
+        assertEquals("void run() {}", reopened.getMethodInfo("p.Foo", "run()").sourceCode);
+    }
+
+    @Test
+    void replaysRecordsWithoutIndexAndDropsTornTail() throws Exception {
+        ParseStore store = ParseStore.open(dir);
+        store.putClass(classInfo("p.Foo", "class Foo {}"));
+        store.putMethod("p.Foo", methodInfo("Foo", "run()", "void run() {}"));
+        store.putMethod("p.Foo", methodInfo("Foo", "run()", "void run() { return; }"));
+        store.removeClass("p.Foo");
+        store.putClass(classInfo("p.Bar", "class Bar {}"));
+        store.flush();
+        ParseStore.close(dir);
+        Files.delete(dir.resolve(ParseStore.INDEX_FILE));
+        long size = Files.size(dir.resolve(ParseStore.STORE_FILE));
+        // a record header whose payload was never written
+        try (FileChannel channel = FileChannel.open(dir.resolve(ParseStore.STORE_FILE), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{2, 0, 0, 0, 3, 'p', '.', 'X', 0, 0, 1}));
+        }
+
+        ParseStore replayed = ParseStore.open(dir);
+        assertNull(replayed.getClassInfo("p.Foo"));
+        assertNull(replayed.getMethodInfo("p.Foo", "run()"));
+        assertEquals("class Bar {}", replayed.getClassInfo("p.Bar").getClassDeclarationCode());
+        assertEquals(Collections.singleton("p.Bar"), replayed.getClassNames());
+        // only the owner of the write lock drops the torn record, before its first append
+        assertEquals(size + 11, Files.size(dir.resolve(ParseStore.STORE_FILE)));
+        replayed.putCode("p.Bar#code", "code");
+        replayed.flush();
+        ParseStore.close(dir);
+        Files.delete(dir.resolve(ParseStore.INDEX_FILE));
+
+        ParseStore again = ParseStore.open(dir);
+        assertEquals("code", again.getCode("p.Bar#code"));
+        assertEquals("class Bar {}", again.getClassInfo("p.Bar").getClassDeclarationCode());
+        assertEquals(Collections.singleton("p.Bar"), again.getClassNames());
+    }
+
+    @Test
+    void compactionKeepsOnlyLiveRecords() {
+        ParseStore store = ParseStore.open(dir);
+        store.putClass(classInfo("p.Foo", "class Foo {}"));
+        for (int i = 0; i < 10; i++) {
+            store.putMethod("p.Foo", methodInfo("Foo", "run()", "void run() { " + i + "; }"));
+        }
+        store.putClass(classInfo("p.Bar", "class Bar {}"));
+        store.removeClass("p.Bar");
+        store.flush();
+        assertTrue(store.getGarbageRatio() > 0.5);
+        long before = fileSize();
+
+        store.compact();
+        assertEquals(0, store.getGarbageRatio());
+        assertTrue(fileSize() < before);
+        assertEquals("void run() { 9; }", store.getMethodInfo("p.Foo", "run()").sourceCode);
+        assertNull(store.getClassInfo("p.Bar"));
+
+        ParseStore.close(dir);
+        ParseStore reopened = ParseStore.open(dir);
+        assertEquals("void run() { 9; }", reopened.getMethodInfo("p.Foo", "run()").sourceCode);
+        assertEquals("class Foo {}", reopened.getClassInfo("p.Foo").getClassDeclarationCode());
+    }
+
+    @Test
+    void readsRecordsAppendedAfterTheMapping() {
+        ParseStore store = ParseStore.open(dir);
+        for (int i = 0; i < 2000; i++) {
+            store.putCode("p.Foo#" + i, "code " + i);
+            assertEquals("code " + i, store.getCode("p.Foo#" + i));
+            assertEquals("code " + i / 2, store.getCode("p.Foo#" + i / 2));
+        }
+    }
+
+    @Test
+    void readOnlyStoreKeepsRecordsInMemory() {
+        ParseStore store = ParseStore.open(dir);
+        store.putClass(classInfo("p.Foo", "class Foo {}"));
+        store.flush();
+        long size = fileSize();
+
+        store.setReadOnly(true);
+        store.putMethod("p.Foo", methodInfo("Foo", "run()", "void run() {}"));
+        store.putClass(classInfo("p.Bar", "class Bar {}"));
+        store.flush();
+        assertEquals(size, fileSize());
+        assertEquals("void run() {}", store.getMethodInfo("p.Foo", "run()").sourceCode);
+        assertEquals("class Bar {}", store.getClassInfo("p.Bar").getClassDeclarationCode());
+        assertEquals(new TreeSet<>(Arrays.asList("p.Bar", "p.Foo")), store.getClassNames());
+
+        store.removeClass("p.Foo");
+        assertNull(store.getClassInfo("p.Foo"));
+        assertNull(store.getMethodInfo("p.Foo", "run()"));
+
+        ParseStore.close(dir);
+        ParseStore reopened = ParseStore.open(dir);
+        assertEquals("class Foo {}", reopened.getClassInfo("p.Foo").getClassDeclarationCode());
+        assertNull(reopened.getClassInfo("p.Bar"));
+    }
+
+    private long fileSize() {
+        try {
+            return Files.size(dir.resolve(ParseStore.STORE_FILE));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static ClassInfo classInfo(String fullClassName, String classCode) {
+        JsonObject json = new JsonObject();
+        json.addProperty("fullClassName", fullClassName);
+        json.addProperty("className", fullClassName.substring(fullClassName.lastIndexOf('.') + 1));
+        json.addProperty("packageName", fullClassName.substring(0, fullClassName.lastIndexOf('.')));
+        ClassInfo classInfo = new Gson().fromJson(json, ClassInfo.class);
+        classInfo.methodSigs = new LinkedHashMap<>();
+        classInfo.classDeclarationCode = classCode;
+        classInfo.classDeclarationCodeKey = ParseStore.classCodeKey(fullClassName);
+        return classInfo;
+    }
+
+    static MethodInfo methodInfo(String className, String signature, String sourceCode) {
+        return new MethodInfo(className, signature.substring(0, signature.indexOf('(')), "", signature, sourceCode,
+                new ArrayList<>(), new LinkedHashMap<>());
+    }
+}
@@ -0,0 +1,95 @@
+package zju.cst.aces.prompt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import zju.cst.aces.util.Cancellation;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TOTTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void goalCancelsTheOtherExpansions() {
+        CountDownLatch blocked = new CountDownLatch(1);
+        TOT<String> tot = new TOT<>(Arrays.asList("slow", "fast"), this::invokeAll)
+                .maxDepth(3)
+                .goal(s -> s.equals("fast!"));
+
+        Optional<String> found = tot.search((state, depth) -> {
+            if (state.equals("fast")) {
+                return "fast!";
+            }
+            // blocks until its token is cancelled, like a pending model request
+            Cancellation.Registration registration = Cancellation.onCancel(blocked::countDown);
+            try {
+                blocked.await();
+            } finally {
+                registration.close();
+            }
+            Cancellation.checkpoint();
+            return state;
+        });
+
+        assertEquals(Optional.of("fast!"), found);
+        assertEquals(Collections.singletonList("slow"), tot.getCancelled());
+        assertTrue(tot.getFailures().isEmpty());
+    }
+
+    @Test
+    void failingBranchIsReportedAndTheBeamKeepsTheBest() {
+        TOT<Integer> tot = new TOT<>(Arrays.asList(1, 2, 3, 4), this::invokeAll)
+                .beamWidth(2)
+                .maxDepth(2)
+                .scorer(Integer::doubleValue);
+
+        Optional<Integer> found = tot.search((state, depth) -> {
+            if (state == 4) {
+                throw new IllegalStateException("model unavailable");
+            }
+            return state + 10 * depth;
+        });
+
+        assertFalse(found.isPresent());
+        assertEquals(Collections.singleton(4), tot.getFailures().keySet());
+        assertTrue(tot.getFailures().get(4) instanceof IllegalStateException);
+        assertEquals(Collections.singletonList(1), tot.getPruned());
+    }
+
+    @Test
+    void stopConditionEndsTheSearchBeforeTheNextStep() {
+        AtomicInteger expansions = new AtomicInteger();
+        TOT<String> tot = new TOT<>(Arrays.asList("a", "b"), this::invokeAll)
+                .maxDepth(5)
+                .stopWhen(() -> expansions.get() >= 2);
+
+        assertFalse(tot.search((state, depth) -> {
+            expansions.incrementAndGet();
+            return state;
+        }).isPresent());
+        assertTrue(tot.isStopped());
+        assertEquals(2, expansions.get());
+        assertTrue(tot.getFailures().isEmpty());
+    }
+
+    private <V> List<V> invokeAll(List<Callable<V>> tasks) {
+        try {
+            List<V> results = new ArrayList<>();
+            for (Future<V> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package zju.cst.aces.runner;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import zju.cst.aces.api.Project;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.RoundRecord;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobJournalTest {
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeJournals() {
+        JobJournal.closeAll();
+    }
+
+    @Test
+    void disabledJournalRecordsNothing() {
+        JobJournal journal = JobJournal.of(config(false));
+        journal.methodFinished("p.Foo", "run()");
+        assertFalse(journal.isMethodFinished("p.Foo", "run()"));
+        assertFalse(Files.exists(journalPath()));
+    }
+
+    @Test
+    void replaysFinishedWorkAndRoundsInProgress() {
+        Config config = config(true);
+        JobJournal journal = JobJournal.of(config);
+        journal.roundFinished("p.Foo", "run()", 0, round(0, "first"));
+        journal.roundFinished("p.Foo", "run()", 0, round(1, "second"));
+        journal.roundFinished("p.Foo", "stop()", 0, round(0, "done"));
+        journal.attemptFinished("p.Foo", "stop()", 0, true);
+        journal.methodFinished("p.Foo", "stop()");
+        journal.roundFinished("p.Foo", "run()", 1, round(0, "failed"));
+        journal.attemptFinished("p.Foo", "run()", 1, false);
+        journal.classFinished("p.Bar");
+        JobJournal.closeAll();
+
+        JobJournal replayed = JobJournal.of(config);
+        assertNotSame(journal, replayed);
+        assertTrue(replayed.isClassFinished("p.Bar"));
+        assertFalse(replayed.isClassFinished("p.Foo"));
+        assertTrue(replayed.isMethodFinished("p.Foo", "stop()"));
+        assertFalse(replayed.isMethodFinished("p.Foo", "run()"));
+        assertEquals(Boolean.FALSE, replayed.getAttemptResult("p.Foo", "run()", 1));
+        assertNull(replayed.getAttemptResult("p.Foo", "run()", 0));
+        assertEquals(Collections.emptyList(), replayed.getRounds("p.Foo", "run()", 1));
+        List<RoundRecord> rounds = replayed.getRounds("p.Foo", "run()", 0);
+        assertEquals(2, rounds.size());
+        assertEquals("second", rounds.get(1).code);
+    }
+
+    @Test
+    void dropsTornTailAndCompacts() throws Exception {
+        Config config = config(true);
+        JobJournal journal = JobJournal.of(config);
+        journal.roundFinished("p.Foo", "run()", 0, round(0, "first"));
+        journal.roundFinished("p.Foo", "stop()", 0, round(0, "done"));
+        journal.attemptFinished("p.Foo", "stop()", 0, true);
+        journal.methodFinished("p.Foo", "stop()");
+        JobJournal.closeAll();
+        // the process died while writing the next record
+        Files.write(journalPath(), "{\"kind\":\"ROUND\",\"key\":\"p.Foo#run()#0\",\"rec".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        JobJournal replayed = JobJournal.of(config);
+        assertTrue(replayed.isMethodFinished("p.Foo", "stop()"));
+        assertEquals(1, replayed.getRounds("p.Foo", "run()", 0).size());
+        String compacted = new String(Files.readAllBytes(journalPath()), StandardCharsets.UTF_8);
+        assertTrue(compacted.endsWith("\n"));
+        assertFalse(compacted.contains("\"rec\n"));
+        // the finished method keeps only its method record, not its attempts and rounds
+        assertFalse(compacted.contains("stop()#0"));
+
+        // appending after the replay continues the compacted file
+        replayed.roundFinished("p.Foo", "run()", 0, round(1, "second"));
+        JobJournal.closeAll();
+        assertEquals(2, JobJournal.of(config).getRounds("p.Foo", "run()", 0).size());
+    }
+
+    @Test
+    void repeatedRoundReplacesTheLaterOnes() {
+        Config config = config(true);
+        JobJournal journal = JobJournal.of(config);
+        journal.roundFinished("p.Foo", "run()", 0, round(0, "a"));
+        journal.roundFinished("p.Foo", "run()", 0, round(1, "b"));
+        journal.roundFinished("p.Foo", "run()", 0, round(1, "c"));
+        journal.roundFinished("p.Foo", "run()", 0, round(3, "gap"));
+        JobJournal.closeAll();
+
+        List<RoundRecord> rounds = JobJournal.of(config).getRounds("p.Foo", "run()", 0);
+        assertEquals(2, rounds.size());
+        assertEquals("c", rounds.get(1).code);
+    }
+
+    private Path journalPath() {
+        return dir.resolve("tmp").resolve("demo").resolve(JobJournal.JOURNAL_FILE);
+    }
+
+    private static RoundRecord round(int round, String code) {
+        RoundRecord record = new RoundRecord(round);
+        record.code = code;
+        return record;
+    }
+
+    private Config config(boolean enableJournal) {
+        Project project = new Project() {
+            @Override
+            public Project getParent() {
+                return null;
+            }
+
+            @Override
+            public File getBasedir() {
+                return dir.toFile();
+            }
+
+            @Override
+            public String getPackaging() {
+                return "jar";
+            }
+
+            @Override
+            public String getGroupId() {
+                return "demo";
+            }
+
+            @Override
+            public String getArtifactId() {
+                return "demo";
+            }
+
+            @Override
+            public List<String> getCompileSourceRoots() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public Path getArtifactPath() {
+                return dir.resolve("target").resolve("demo.jar");
+            }
+
+            @Override
+            public Path getBuildPath() {
+                return dir.resolve("target").resolve("classes");
+            }
+        };
+        return new Config.ConfigBuilder(project)
+                .tmpOutput(dir.resolve("tmp"))
+                .enableJournal(enableJournal)
+                .build();
+    }
+}
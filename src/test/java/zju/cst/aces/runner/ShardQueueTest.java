@@ -0,0 +1,129 @@
+package zju.cst.aces.runner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardQueueTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentWorkersClaimEveryClassExactlyOnce() throws Exception {
+        List<String> classPaths = classPaths(300);
+        ShardQueue queue = ShardQueue.create(dir, classPaths, 4);
+        int workers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            String worker = "worker-" + (i + 1);
+            int homeShard = i;
+            futures.add(executor.submit(() -> {
+                // each worker opens the queue itself, like a separate process would
+                ShardQueue own = ShardQueue.open(dir);
+                List<String> claimed = new ArrayList<>();
+                start.await();
+                ShardQueue.Claim claim;
+                while ((claim = own.claim(worker, homeShard)) != null) {
+                    claimed.add(claim.getClassPath());
+                    own.complete(claim, "Processed", 1);
+                }
+                return claimed;
+            }));
+        }
+        start.countDown();
+        List<String> all = new ArrayList<>();
+        try {
+            for (Future<List<String>> future : futures) {
+                all.addAll(future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(classPaths.size(), all.size());
+        assertEquals(new HashSet<>(classPaths), new HashSet<>(all));
+        assertTrue(queue.isDrained());
+        List<ShardQueue.Result> results = queue.results();
+        assertEquals(classPaths.size(), results.size());
+        assertEquals(new HashSet<>(classPaths), results.stream().map(ShardQueue.Result::getClassPath).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void workerClaimsItsShardInOrderThenStealsFromTheTail() {
+        ShardQueue queue = ShardQueue.create(dir, classPaths(6), 2);
+        assertEquals("C0.java", claimAndComplete(queue, "worker-1", 0));
+        assertEquals("C1.java", claimAndComplete(queue, "worker-1", 0));
+        assertEquals("C2.java", claimAndComplete(queue, "worker-1", 0));
+        // the own shard is empty, steal the last class of the other shard
+        assertEquals("C5.java", claimAndComplete(queue, "worker-1", 0));
+        assertEquals("C3.java", claimAndComplete(queue, "worker-2", 1));
+        assertEquals("C4.java", claimAndComplete(queue, "worker-2", 1));
+        assertNull(queue.claim("worker-2", 1));
+        assertTrue(queue.isDrained());
+    }
+
+    @Test
+    void requeueReturnsUnfinishedClaims() {
+        ShardQueue queue = ShardQueue.create(dir, classPaths(4), 1);
+        ShardQueue.Claim done = queue.claim("worker-1", 0);
+        queue.complete(done, "Processed", 1);
+        queue.claim("worker-1", 0);
+        assertEquals(1, queue.claimed());
+        assertEquals(2, queue.pending());
+
+        assertEquals(1, queue.requeue("worker-1"));
+        assertEquals(0, queue.claimed());
+        assertEquals(3, queue.pending());
+        // a requeued class goes back to the head of its shard
+        assertEquals("C1.java", queue.claim("worker-2", 0).getClassPath());
+    }
+
+    @Test
+    void recreatingWithTheSameClassesResumesTheQueue() {
+        List<String> classPaths = classPaths(5);
+        ShardQueue queue = ShardQueue.create(dir, classPaths, 2);
+        queue.complete(queue.claim("worker-1", 0), "Processed", 1);
+        queue.claim("worker-1", 0);
+
+        ShardQueue resumed = ShardQueue.create(dir, classPaths, 2);
+        assertEquals(1, resumed.results().size());
+        assertEquals(0, resumed.claimed());
+        assertEquals(4, resumed.pending());
+
+        ShardQueue rebuilt = ShardQueue.create(dir, classPaths(6), 2);
+        assertEquals(0, rebuilt.results().size());
+        assertEquals(6, rebuilt.pending());
+    }
+
+    @Test
+    void staleWorkersAreThoseWithoutRecentHeartbeat() throws Exception {
+        ShardQueue queue = ShardQueue.create(dir, classPaths(1), 1);
+        queue.heartbeat("worker-1");
+        Thread.sleep(300);
+        queue.heartbeat("worker-2");
+        assertEquals(Collections.singletonList("worker-1"), queue.staleWorkers(150));
+        assertEquals(Collections.emptyList(), queue.staleWorkers(60000));
+    }
+
+    private static String claimAndComplete(ShardQueue queue, String worker, int homeShard) {
+        ShardQueue.Claim claim = queue.claim(worker, homeShard);
+        queue.complete(claim, "Processed", 1);
+        return claim.getClassPath();
+    }
+
+    private static List<String> classPaths(int count) {
+        List<String> classPaths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            classPaths.add("C" + i + ".java");
+        }
+        return classPaths;
+    }
+}
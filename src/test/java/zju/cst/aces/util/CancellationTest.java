@@ -0,0 +1,86 @@
+package zju.cst.aces.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CancellationTest {
+    @Test
+    void cancelAbortsInFlightWork() throws Exception {
+        Cancellation token = new Cancellation();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> work = executor.submit(() -> token.call(() -> {
+                // a blocking call, like an HTTP request, released by its cancel hook
+                Cancellation.Registration registration = Cancellation.onCancel(blocked::countDown);
+                try {
+                    started.countDown();
+                    blocked.await();
+                } finally {
+                    registration.close();
+                }
+                Cancellation.checkpoint();
+                return true;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            token.cancel();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> work.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof CancellationException);
+            assertTrue(token.isCancelled());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void hookRegisteredAfterCancelRunsImmediately() throws Exception {
+        Cancellation token = new Cancellation();
+        token.cancel();
+        AtomicInteger runs = new AtomicInteger();
+        token.call(() -> {
+            Cancellation.onCancel(runs::incrementAndGet).close();
+            return null;
+        });
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void closedRegistrationIsNotRun() throws Exception {
+        Cancellation token = new Cancellation();
+        AtomicInteger runs = new AtomicInteger();
+        token.call(() -> {
+            Cancellation.onCancel(runs::incrementAndGet).close();
+            return null;
+        });
+        token.cancel();
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void propagateBindsTheTokenOnAnotherThread() throws Exception {
+        Cancellation token = new Cancellation();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Callable<Cancellation> work = token.call(() -> Cancellation.propagate(Cancellation::current));
+            assertSame(token, executor.submit(work).get());
+            assertNull(executor.submit(Cancellation::current).get());
+            assertNull(Cancellation.current());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void checkpointWithoutTokenDoesNothing() {
+        assertNull(Cancellation.current());
+        Cancellation.checkpoint();
+        Cancellation.Registration registration = Cancellation.onCancel(() -> fail("no token to cancel"));
+        registration.close();
+    }
+}